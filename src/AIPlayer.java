@@ -1,10 +1,16 @@
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * AIPlayer - AI opponent with different difficulty levels
- * Uses Minimax algorithm with alpha-beta pruning for Hard mode
+ * Uses Minimax algorithm with alpha-beta pruning for Hard mode,
+ * or Monte Carlo Tree Search on the 7x7 board. Hard mode also plays
+ * power-ups, which only the alpha-beta search knows about.
  */
 public class AIPlayer extends Player {
     
@@ -12,15 +18,67 @@ public class AIPlayer extends Player {
         EASY, MEDIUM, HARD
     }
     
+    // Search used by HARD (and the smart half of MEDIUM). AUTO picks Monte Carlo
+    // Tree Search on 7x7, where depth-limited alpha-beta plays poorly, unless
+    // power-ups are still in play.
+    public enum Strategy {
+        AUTO, ALPHA_BETA, MCTS
+    }
+    
     private Difficulty difficulty;
     private Random random;
     private char opponentSymbol;
+    private Player opponent;
+    private Strategy strategy = Strategy.AUTO;
+    private SearchEngine engine;
+    private MctsEngine mcts;
+    private ThreatSearch threats = new ThreatSearch();
+    
+    // Pondering: after its own move the AI searches the position behind the
+    // opponent's expected reply on a background thread until the reply arrives
+    // (at most PONDER_BUDGET_FACTOR normal searches, or MAX_PONDER_MILLIS without a time budget)
+    private static final int PONDER_BUDGET_FACTOR = 8;
+    private static final long MAX_PONDER_MILLIS = 30_000;
+    private boolean pondering = false;
+    private ExecutorService ponderExecutor;
+    private Future<?> ponderTask;
+    private volatile long ponderHash;
+    private volatile int ponderInventory;
+    private volatile int ponderMove = SearchEngine.NO_MOVE;
+    private volatile boolean ponderFinished;
+    private volatile long ponderMillis;
+    private int ponderHits;
+    // Set by cancelSearch until resetCancel; the engines' own flags are only
+    // cleared once no other search is using them
+    private volatile boolean cancelled;
+    
+    // Statistics of the last searched move and of all of them, while collecting
+    private SearchStats lastStats;
+    private SearchStats sessionStats;
+    // Work behind the current move, for its AiMoveEvent
+    private int moveDepth;
+    private long moveNodes;
     
     public AIPlayer(String name, char symbol, char opponentSymbol, Difficulty difficulty) {
+        this(name, symbol, opponentSymbol, difficulty, new Random());
+    }
+    
+    /**
+     * Same, with a seed for all its random choices (EASY and MEDIUM moves,
+     * MCTS playouts). With node or playout budgets instead of a time budget
+     * its games are then the same on every run.
+     */
+    public AIPlayer(String name, char symbol, char opponentSymbol, Difficulty difficulty, long seed) {
+        this(name, symbol, opponentSymbol, difficulty, new Random(seed));
+    }
+    
+    private AIPlayer(String name, char symbol, char opponentSymbol, Difficulty difficulty, Random random) {
         super(name, symbol);
         this.difficulty = difficulty;
         this.opponentSymbol = opponentSymbol;
-        this.random = new Random();
+        this.random = random;
+        this.engine = new SearchEngine(symbol, opponentSymbol);
+        this.mcts = new MctsEngine(symbol, random.nextLong());
     }
     
     public Difficulty getDifficulty() {
@@ -31,8 +89,265 @@ public class AIPlayer extends Player {
         this.difficulty = difficulty;
     }
     
+    /**
+     * The other player, whose power-ups the search has to expect
+     */
+    public void setOpponent(Player opponent) {
+        this.opponent = opponent;
+    }
+    
+    public Strategy getStrategy() {
+        return strategy;
+    }
+    
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+    
+    /**
+     * Time the HARD search may spend on one move, in milliseconds (0 = no limit)
+     */
+    public void setTimeBudget(long millis) {
+        engine.setTimeBudget(millis);
+        mcts.setTimeBudget(millis);
+    }
+    
+    /**
+     * Number of Monte Carlo playouts per move when the MCTS strategy is used
+     */
+    public void setPlayoutBudget(int playouts) {
+        mcts.setPlayoutBudget(playouts);
+    }
+    
+    /**
+     * Number of nodes the HARD search may visit on one move (0 = no limit)
+     */
+    public void setNodeBudget(long nodes) {
+        engine.setNodeBudget(nodes);
+    }
+    
+    /**
+     * Fixed search depth in plies (0 = deepen until the budget runs out)
+     */
+    public void setMaxDepth(int depth) {
+        engine.setMaxDepth(depth);
+    }
+    
+    /**
+     * Threads used to split the HARD search over the root moves (1 = sequential)
+     */
+    public void setSearchThreads(int threads) {
+        engine.setThreads(threads);
+    }
+    
+    /**
+     * Lets HARD keep searching during the opponent's turn (see startPondering)
+     */
+    public void setPondering(boolean pondering) {
+        this.pondering = pondering;
+    }
+    
+    public boolean isPondering() {
+        return pondering;
+    }
+    
+    /**
+     * Number of moves answered straight from a finished ponder search
+     */
+    public int getPonderHits() {
+        return ponderHits;
+    }
+    
+    /**
+     * Starts pondering on the board as it is after this AI's move. The AI
+     * guesses the opponent's reply and searches the resulting position in the
+     * background. If the guess is right the next makeMove can answer at once;
+     * otherwise the search is dropped and its table entries still help.
+     */
+    public void startPondering(GameBoard board) {
+        if (!finishPondering()) return;
+        if (!pondering || difficulty != Difficulty.HARD || board.findWinner().hasWinner()) return;
+        
+        // Read on the caller's thread: the opponent may spend power-ups while the ponder search runs
+        final int inventory = inventory();
+        if (inventory == 0 && Tablebase.forBoard(board.getSize()) != null) return;
+        int reply = useMcts(board.getSize(), inventory)
+                ? mcts.getPredictedReply() : engine.predictReply(board, inventory);
+        if (reply == SearchEngine.NO_MOVE) {
+            reply = mostCentralEmptyCell(board);
+        }
+        if (reply == SearchEngine.NO_MOVE) return;
+        
+        final GameBoard predicted = board.copy();
+        predicted.makeMove(reply, opponentSymbol);
+        int size = predicted.getSize();
+        if (predicted.isFull() || predicted.checkWinnerAt(reply / size, reply % size).hasWinner()) return;
+        
+        ponderHash = predicted.getHash();
+        ponderInventory = inventory;
+        ponderMove = SearchEngine.NO_MOVE;
+        ponderFinished = false;
+        engine.resetCancel();
+        mcts.resetCancel();
+        if (cancelled) return;
+        if (ponderExecutor == null || ponderExecutor.isShutdown()) {
+            ponderExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "ai-ponder");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        ponderTask = ponderExecutor.submit(() -> ponder(predicted, inventory));
+    }
+    
+    /**
+     * Stops pondering without waiting for the background search to unwind
+     */
+    public void cancelPondering() {
+        if (ponderTask != null) {
+            engine.cancel();
+            mcts.cancel();
+            ponderTask.cancel(false);
+        }
+    }
+    
+    private void ponder(GameBoard predicted, int inventory) {
+        // Runs until the opponent moves, but never longer than a few normal searches,
+        // in case no move ever comes
+        long timeBudget = engine.getTimeBudget();
+        int playoutBudget = mcts.getPlayoutBudget();
+        long ponderBudget = timeBudget > 0 ? timeBudget * PONDER_BUDGET_FACTOR : MAX_PONDER_MILLIS;
+        long start = System.nanoTime();
+        engine.setTimeBudget(ponderBudget);
+        mcts.setTimeBudget(ponderBudget);
+        mcts.setPlayoutBudget((int) Math.min(Integer.MAX_VALUE, (long) playoutBudget * PONDER_BUDGET_FACTOR));
+        try {
+            int move = searchMove(predicted, inventory);
+            ponderMillis = (System.nanoTime() - start) / 1_000_000;
+            // Finished on its own, or did at least the work of a normal search
+            ponderFinished = useMcts(predicted.getSize(), inventory)
+                    ? mcts.getPlayoutCount() >= playoutBudget
+                    : !engine.wasCancelled() || (timeBudget > 0 && ponderMillis >= timeBudget);
+            ponderMove = move;
+        } finally {
+            engine.setTimeBudget(timeBudget);
+            mcts.setTimeBudget(timeBudget);
+            mcts.setPlayoutBudget(playoutBudget);
+        }
+    }
+    
+    // Cancels pondering and waits for it, so the engines are free for a real search.
+    // False if interrupted first: the ponder search may still be using them.
+    private boolean finishPondering() {
+        if (ponderTask == null) return true;
+        engine.cancel();
+        mcts.cancel();
+        try {
+            ponderTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | java.util.concurrent.CancellationException e) {
+            // The ponder search never ran or failed; the real search does not depend on it
+        }
+        ponderTask = null;
+        return true;
+    }
+    
+    private int mostCentralEmptyCell(GameBoard board) {
+        int[] ranks = MoveOrderer.centerRanks(board.getSize());
+        int best = SearchEngine.NO_MOVE;
+        for (long empty = board.getEmptyBits(); empty != 0; empty &= empty - 1) {
+            int cell = Long.numberOfTrailingZeros(empty);
+            if (best == SearchEngine.NO_MOVE || ranks[cell] > ranks[best]) best = cell;
+        }
+        return best;
+    }
+    
+    /**
+     * Asks a search running on another thread to stop as soon as possible
+     */
+    public void cancelSearch() {
+        cancelled = true;
+        engine.cancel();
+        mcts.cancel();
+        cancelPondering();
+    }
+    
+    /**
+     * Clears an earlier cancelSearch. Call it before handing makeMove to
+     * another thread, not from there: a cancel sent in between then still
+     * stops the search.
+     */
+    public void resetCancel() {
+        cancelled = false;
+    }
+    
+    /**
+     * Cancels every search and stops the ponder and search threads, for an
+     * AI that will not play again
+     */
+    public void dispose() {
+        cancelSearch();
+        engine.close();
+        if (ponderExecutor != null) {
+            ponderExecutor.shutdown();
+        }
+    }
+    
+    /**
+     * Collects SearchStats for every move from now on, or stops collecting
+     * and drops what was collected
+     */
+    public void setCollectingStats(boolean collecting) {
+        engine.setCollectingStats(collecting);
+        sessionStats = collecting ? new SearchStats() : null;
+        lastStats = null;
+    }
+    
+    /**
+     * What the searches behind the last move did, or null when not
+     * collecting or the move needed none (EASY, a random MEDIUM move or
+     * the tablebase)
+     */
+    public SearchStats getLastStats() {
+        return lastStats;
+    }
+    
+    /**
+     * All moves collected so far summed up, or null when not collecting
+     */
+    public SearchStats getSessionStats() {
+        return sessionStats != null ? sessionStats.copy() : null;
+    }
+    
+    /**
+     * Depth of the last completed iteration of the most recent search
+     */
+    public int getLastSearchDepth() {
+        return engine.getCompletedDepth();
+    }
+    
     @Override
     public int[] makeMove(GameBoard board) {
+        AiMoveEvent event = new AiMoveEvent();
+        event.begin();
+        lastStats = null;
+        moveDepth = 0;
+        moveNodes = 0;
+        int[] move = chooseMove(board);
+        event.end();
+        if (event.shouldCommit()) {
+            event.difficulty = difficulty.name();
+            event.boardSize = board.getSize();
+            event.depth = moveDepth;
+            event.nodes = moveNodes;
+            event.commit();
+        }
+        return move;
+    }
+    
+    private int[] chooseMove(GameBoard board) {
         switch (difficulty) {
             case EASY:
                 return makeEasyMove(board);
@@ -45,6 +360,14 @@ public class AIPlayer extends Player {
         }
     }
     
+    /**
+     * A random empty cell as {row, col}, for a turn whose chosen move failed
+     * or was rejected; null on a full board
+     */
+    public int[] fallbackMove(GameBoard board) {
+        return makeEasyMove(board);
+    }
+    
     private int[] makeEasyMove(GameBoard board) {
         // Random move
         List<int[]> emptyCells = getEmptyCells(board);
@@ -60,98 +383,118 @@ public class AIPlayer extends Player {
         return makeEasyMove(board);
     }
     
+    /**
+     * Returns {row, col} for a placement, or {row, col, kind} with a Move kind
+     * when the AI wants to play one of its power-ups on that cell.
+     */
     private int[] makeHardMove(GameBoard board) {
-        int[] bestMove = null;
-        int bestScore = Integer.MIN_VALUE;
         int size = board.getSize();
-        int maxDepth = size <= 3 ? 9 : (size == 4 ? 5 : 4);
+        int inventory = inventory();
+        int move = SearchEngine.NO_MOVE;
         
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (board.isCellEmpty(i, j)) {
-                    GameBoard copy = board.copy();
-                    copy.setCell(i, j, symbol);
-                    int score = minimax(copy, 0, false, Integer.MIN_VALUE, Integer.MAX_VALUE, maxDepth);
-                    if (score > bestScore) {
-                        bestScore = score;
-                        bestMove = new int[]{i, j};
-                    }
-                }
+        // Small boards without power-ups: perfect play straight from the tablebase
+        Tablebase tablebase = inventory == 0 ? Tablebase.forBoard(size) : null;
+        if (tablebase != null) {
+            int cell = tablebase.bestMove(board, symbol);
+            if (cell != SearchEngine.NO_MOVE) {
+                return new int[]{cell / size, cell % size};
             }
         }
         
-        return bestMove != null ? bestMove : makeEasyMove(board);
-    }
-    
-    private int minimax(GameBoard board, int depth, boolean isMaximizing, int alpha, int beta, int maxDepth) {
-        char winner = board.checkWinner();
+        SearchStats moveStats = sessionStats != null ? new SearchStats() : null;
+        long start = moveStats != null ? System.nanoTime() : 0;
         
-        if (winner == symbol) {
-            return 100 - depth;
-        } else if (winner == opponentSymbol) {
-            return depth - 100;
-        } else if (board.isFull() || depth >= maxDepth) {
-            return evaluateBoard(board);
+        if (!finishPondering()) {
+            // Interrupted: the move is no longer wanted
+            return null;
         }
+        // The engines are free now; a cancelSearch from here on reaches them
+        engine.resetCancel();
+        mcts.resetCancel();
+        if (cancelled) return null;
+        if (ponderFinished && ponderMove != SearchEngine.NO_MOVE && board.getHash() == ponderHash
+                && inventory == ponderInventory) {
+            // The opponent played the expected reply and the answer is already known
+            move = ponderMove;
+            ponderHits++;
+        }
+        ponderMove = SearchEngine.NO_MOVE;
         
-        int size = board.getSize();
-        
-        if (isMaximizing) {
-            int maxEval = Integer.MIN_VALUE;
-            for (int i = 0; i < size; i++) {
-                for (int j = 0; j < size; j++) {
-                    if (board.isCellEmpty(i, j)) {
-                        GameBoard copy = board.copy();
-                        copy.setCell(i, j, symbol);
-                        int eval = minimax(copy, depth + 1, false, alpha, beta, maxDepth);
-                        maxEval = Math.max(maxEval, eval);
-                        alpha = Math.max(alpha, eval);
-                        if (beta <= alpha) break;
-                    }
-                }
+        if (useThreatSearch(board, inventory)) {
+            // Forcing lines first: our own forced win, else the block of theirs,
+            // which alpha-beta mostly finds itself but the playouts of MCTS do not
+            int forced = threats.findWin(board, symbol);
+            long threatNodes = threats.getNodeCount();
+            if (forced == SearchEngine.NO_MOVE && move == SearchEngine.NO_MOVE && useMcts(size, inventory)) {
+                forced = threats.findDefence(board, symbol);
+                threatNodes += threats.getNodeCount();
             }
-            return maxEval;
-        } else {
-            int minEval = Integer.MAX_VALUE;
-            for (int i = 0; i < size; i++) {
-                for (int j = 0; j < size; j++) {
-                    if (board.isCellEmpty(i, j)) {
-                        GameBoard copy = board.copy();
-                        copy.setCell(i, j, opponentSymbol);
-                        int eval = minimax(copy, depth + 1, true, alpha, beta, maxDepth);
-                        minEval = Math.min(minEval, eval);
-                        beta = Math.min(beta, eval);
-                        if (beta <= alpha) break;
-                    }
-                }
+            moveNodes += threatNodes;
+            if (moveStats != null) {
+                moveStats.addNodes(threatNodes);
             }
-            return minEval;
+            if (forced != SearchEngine.NO_MOVE) {
+                move = forced;
+            }
+        }
+        if (move == SearchEngine.NO_MOVE) {
+            move = searchMove(board, inventory);
+            recordSearch(moveStats, board.getSize(), inventory);
+        }
+        if (moveStats != null) {
+            moveStats.setElapsedNanos(System.nanoTime() - start);
+            sessionStats.add(moveStats);
+            lastStats = moveStats;
         }
+        if (move == SearchEngine.NO_MOVE) {
+            return makeEasyMove(board);
+        }
+        int cell = Move.cell(move);
+        if (Move.kind(move) != Move.PLACE) {
+            return new int[]{cell / size, cell % size, Move.kind(move)};
+        }
+        return new int[]{cell / size, cell % size};
     }
     
-    private int evaluateBoard(GameBoard board) {
-        int score = 0;
-        int size = board.getSize();
-        int center = size / 2;
-        
-        // Prefer center
-        if (board.getCell(center, center) == symbol) {
-            score += 3;
-        } else if (board.getCell(center, center) == opponentSymbol) {
-            score -= 3;
-        }
-        
-        // Prefer corners
-        int[][] corners = {{0, 0}, {0, size-1}, {size-1, 0}, {size-1, size-1}};
-        for (int[] corner : corners) {
-            if (board.getCell(corner[0], corner[1]) == symbol) {
-                score += 2;
-            } else if (board.getCell(corner[0], corner[1]) == opponentSymbol) {
-                score -= 2;
+    private int searchMove(GameBoard board, int inventory) {
+        return useMcts(board.getSize(), inventory) ? mcts.search(board) : engine.search(board, inventory);
+    }
+    
+    // Depth and nodes of the search just run, for the move's event and statistics
+    private void recordSearch(SearchStats moveStats, int size, int inventory) {
+        if (useMcts(size, inventory)) {
+            moveNodes += mcts.getNodeCount();
+            if (moveStats != null) {
+                moveStats.addNodes(mcts.getNodeCount());
+                moveStats.addLeaves(mcts.getPlayoutCount());
+                moveStats.finishSearch(0, 0);
+            }
+        } else {
+            moveDepth = engine.getCompletedDepth();
+            moveNodes += engine.getNodeCount();
+            if (moveStats != null) {
+                moveStats.add(engine.getLastStats());
             }
         }
-        
-        return score;
+    }
+    
+    // Threat sequences only hold when the opponent cannot bomb or swap them apart
+    private boolean useThreatSearch(GameBoard board, int inventory) {
+        int reopeners = Move.inventoryBit(Move.BOMB, false) | Move.inventoryBit(Move.SWAP, false);
+        return board.getWinCondition() >= 4 && (inventory & reopeners) == 0;
+    }
+    
+    private boolean useMcts(int size, int inventory) {
+        return strategy == Strategy.MCTS || (strategy == Strategy.AUTO && size >= 7 && inventory == 0);
+    }
+    
+    // Power-ups both players hold, as a Move inventory mask
+    private int inventory() {
+        int inventory = Move.inventoryOf(this, true);
+        if (opponent != null) {
+            inventory |= Move.inventoryOf(opponent, false);
+        }
+        return inventory;
     }
     
     private List<int[]> getEmptyCells(GameBoard board) {
@@ -0,0 +1,32 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * AiMoveEvent - Flight Recorder event for one AIPlayer.makeMove
+ * Its duration is the whole time the AI took to choose the move: waiting
+ * for pondering, threat search and search. Depth and nodes are zero for
+ * moves that needed no search.
+ */
+@Name("tictactoe.AiMove")
+@Label("AI Move")
+@Category({"Tic Tac Toe", "AI"})
+@Description("An AI player choosing a move")
+@StackTrace(false)
+public class AiMoveEvent extends jdk.jfr.Event {
+    @Label("Difficulty")
+    String difficulty;
+
+    @Label("Board Size")
+    int boardSize;
+
+    @Label("Depth")
+    @Description("Deepest completed search iteration")
+    int depth;
+
+    @Label("Nodes")
+    @Description("Nodes of the threat search and the main search, or MCTS tree nodes")
+    long nodes;
+}
@@ -0,0 +1,173 @@
+/**
+ * EndgameSolver - Exact win/draw/loss solver for positions with few empty cells
+ * Plays out every continuation on two bitboards (side to move, other side)
+ * with alpha-beta on the values -1, 0 and 1, immediate win and forced
+ * block detection, and a small table of solved positions. Power-ups are
+ * not part of the solve, so it is only used once both sides have spent them.
+ */
+public class EndgameSolver {
+    public static final int WIN = 1;
+    public static final int DRAW = 0;
+    public static final int LOSS = -1;
+
+    private static final int TABLE_SIZE_BITS = 18;
+    private static final int EXACT = 0;
+    private static final int LOWER = 1;
+    private static final int UPPER = 2;
+    // Set in every stored entry: an exact loss would otherwise encode as 0
+    private static final int USED = 1 << 4;
+
+    private final long[] tableMine = new long[1 << TABLE_SIZE_BITS];
+    private final long[] tableTheirs = new long[1 << TABLE_SIZE_BITS];
+    // value + 1 in bits 0-1, bound in bits 2-3, USED in bit 4; 0 = empty slot
+    private final byte[] tableEntry = new byte[1 << TABLE_SIZE_BITS];
+
+    private WinLines lines;
+    private long full;
+    private int[] order;
+
+    private long nodeLimit;
+    private long deadline;
+    private long nodes;
+    private boolean aborted;
+    private volatile boolean cancelled;
+    private int bestMove;
+    private int value;
+
+    /**
+     * Solves the position for the given side to move. Returns false if the
+     * node limit or deadline (System.nanoTime, 0 = none) ran out first.
+     */
+    public boolean solve(GameBoard board, char side, long nodeLimit, long deadline) {
+        int size = board.getSize();
+        lines = WinLines.forBoard(size, board.getWinCondition());
+        full = board.getFullMask();
+        order = centerOrder(size);
+        java.util.Arrays.fill(tableEntry, (byte) 0);
+
+        this.nodeLimit = nodeLimit > 0 ? nodeLimit : Long.MAX_VALUE;
+        this.deadline = deadline > 0 ? deadline : Long.MAX_VALUE;
+        nodes = 0;
+        aborted = false;
+
+        long mine = board.getBits(side);
+        long theirs = board.getBits(side == 'X' ? 'O' : 'X');
+        bestMove = SearchEngine.NO_MOVE;
+        value = LOSS;
+        long empty = ~(mine | theirs) & full;
+        for (int cell : order) {
+            long bit = 1L << cell;
+            if ((empty & bit) == 0) continue;
+            int v = completesLine(mine | bit, cell) ? WIN : -negamax(theirs, mine | bit, LOSS, -value);
+            if (aborted) return false;
+            if (bestMove == SearchEngine.NO_MOVE || v > value) {
+                bestMove = cell;
+                value = v;
+                if (v == WIN) break;
+            }
+        }
+        return true;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Clears an earlier cancel; solve keeps it, so a cancel sent before the solve started still counts
+    public void resetCancel() {
+        cancelled = false;
+    }
+
+    // Cell chosen by the last finished solve, or NO_MOVE if the board was full
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    // WIN, DRAW or LOSS for the side that was to move
+    public int getValue() {
+        return value;
+    }
+
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    private int negamax(long mine, long theirs, int alpha, int beta) {
+        if ((++nodes & 4095) == 0
+                && (cancelled || nodes > nodeLimit || System.nanoTime() > deadline)) {
+            aborted = true;
+            return DRAW;
+        }
+        long empty = ~(mine | theirs) & full;
+        if (empty == 0) return DRAW;
+
+        // A win on the spot ends the search; the opponent's wins must be blocked
+        long threats = 0;
+        for (long bits = empty; bits != 0; bits &= bits - 1) {
+            int cell = Long.numberOfTrailingZeros(bits);
+            if (completesLine(mine | (1L << cell), cell)) return WIN;
+            if (completesLine(theirs | (1L << cell), cell)) threats |= 1L << cell;
+        }
+        if (Long.bitCount(threats) > 1) return LOSS;
+        long candidates = threats != 0 ? threats : empty;
+
+        int slot = slotOf(mine, theirs);
+        int entry = tableEntry[slot];
+        if (entry != 0 && tableMine[slot] == mine && tableTheirs[slot] == theirs) {
+            int stored = (entry & 3) - 1;
+            int bound = (entry >> 2) & 3;
+            if (bound == EXACT) return stored;
+            if (bound == LOWER) alpha = Math.max(alpha, stored);
+            if (bound == UPPER) beta = Math.min(beta, stored);
+            if (alpha >= beta) return stored;
+        }
+
+        int alphaOrig = alpha;
+        int best = LOSS - 1;
+        for (int cell : order) {
+            long bit = 1L << cell;
+            if ((candidates & bit) == 0) continue;
+            int v = -negamax(theirs, mine | bit, -beta, -alpha);
+            if (aborted) return DRAW;
+            if (v > best) {
+                best = v;
+                if (v > alpha) alpha = v;
+                if (alpha >= beta) break;
+            }
+        }
+
+        int bound = best <= alphaOrig ? UPPER : best >= beta ? LOWER : EXACT;
+        tableMine[slot] = mine;
+        tableTheirs[slot] = theirs;
+        tableEntry[slot] = (byte) (USED | (bound << 2) | (best + 1));
+        return best;
+    }
+
+    private boolean completesLine(long bits, int cell) {
+        for (int line : lines.getLinesThrough(cell)) {
+            long mask = lines.getMask(line);
+            if ((bits & mask) == mask) return true;
+        }
+        return false;
+    }
+
+    private static int slotOf(long mine, long theirs) {
+        long h = mine * 0x9E3779B97F4A7C15L ^ theirs * 0xC2B2AE3D27D4EB4FL;
+        return (int) (h >>> (64 - TABLE_SIZE_BITS));
+    }
+
+    // Cells from the center outwards, the order in which moves are tried
+    static int[] centerOrder(int size) {
+        int[] ranks = MoveOrderer.centerRanks(size);
+        Integer[] cells = new Integer[size * size];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = i;
+        }
+        java.util.Arrays.sort(cells, (a, b) -> ranks[b] - ranks[a]);
+        int[] order = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            order[i] = cells[i];
+        }
+        return order;
+    }
+}
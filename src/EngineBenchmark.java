@@ -0,0 +1,300 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * EngineBenchmark - Timings of the board and search hot paths
+ * Runs every benchmark over a fixed corpus of positions per board size and
+ * game phase: opening (a fifth of the cells taken), midgame (half) and
+ * endgame (three quarters), none of them won. The corpora are drawn from
+ * fixed seeds, so numbers from different builds compare the same positions.
+ *
+ * The tree has no build file to pull in JMH, so this follows its method by
+ * hand: every benchmark runs in its own forked JVM (with this JVM's options),
+ * so its JIT profile and heap are not shaped by the benchmarks before it,
+ * gets warmup iterations and then measured ones, and reports nanoseconds
+ * and bytes allocated per operation (the gc.alloc.rate.norm of JMH's
+ * -prof gc). As in JMH the error is the 99.9% confidence interval of the
+ * mean over the measured iterations of all forks: forks differ more than
+ * iterations do, as each compiles the code its own way, so more forks
+ * narrow it most. Search uses a fixed depth per size and a cleared table
+ * for every pass.
+ *
+ * Usage: java EngineBenchmark [filter] [warmups] [iterations] [millis] [forks]
+ * runs the benchmarks whose name contains filter (all by default), each in
+ * 20 forks with 8 warmup and 5 measured iterations of 400 ms (the search
+ * takes about 2 s to be fully compiled); all of them take about two and a
+ * half hours. With 0 forks all run in this JVM, faster but
+ * dependent on their order. Run it with -Xms and -Xmx set to the same
+ * value and nothing else busy.
+ */
+public class EngineBenchmark {
+    private static final int[] SIZES = {3, 4, 5, 7};
+    private static final String[] PHASES = {"opening", "midgame", "endgame"};
+    private static final double[] FILL = {0.2, 0.5, 0.75};
+    private static final int CORPUS_SIZE = 16;
+    // Search depth per size, for passes of a few milliseconds
+    private static final int[] SEARCH_DEPTH = {9, 6, 5, 4};
+    // First argument of a forked JVM, followed by the benchmark name and the iteration settings
+    private static final String FORK_ARGUMENT = "--fork";
+
+    // Keeps the JIT from dropping results nobody reads
+    private static volatile long sink;
+
+    private final String name;
+    private final Position[] corpus;
+    private final Operation operation;
+    // Corpus passes per timed invocation, so cheap operations outlast the clock call
+    private final int passes;
+
+    private interface Operation {
+        default void setup() {
+        }
+
+        long run(Position position);
+    }
+
+    // A corpus position, with its last placed cell and the side to move
+    private static class Position {
+        final GameBoard board;
+        final int lastCell;
+        final char toMove;
+
+        Position(GameBoard board, int lastCell, char toMove) {
+            this.board = board;
+            this.lastCell = lastCell;
+            this.toMove = toMove;
+        }
+    }
+
+    private EngineBenchmark(String name, Position[] corpus, int passes, Operation operation) {
+        this.name = name;
+        this.corpus = corpus;
+        this.passes = passes;
+        this.operation = operation;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals(FORK_ARGUMENT)) {
+            runFork(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]), Long.parseLong(args[4]));
+            return;
+        }
+        String filter = args.length > 0 ? args[0] : "";
+        int warmups = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long millis = args.length > 3 ? Long.parseLong(args[3]) : 400;
+        int forks = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+
+        System.out.printf("%-32s %12s %10s %10s%n", "Benchmark", "ns/op", "error", "B/op");
+        for (EngineBenchmark benchmark : all()) {
+            if (!benchmark.name.contains(filter)) continue;
+            // {ns per op, bytes per op} of every measured iteration of every fork
+            List<double[]> results = new ArrayList<>();
+            if (forks == 0) {
+                results.addAll(benchmark.measure(warmups, iterations, millis));
+            }
+            for (int fork = 0; fork < forks; fork++) {
+                results.addAll(fork(benchmark.name, warmups, iterations, millis));
+            }
+            double mean = 0;
+            double bytes = 0;
+            for (double[] result : results) {
+                mean += result[0] / results.size();
+                bytes += result[1] / results.size();
+            }
+            double variance = 0;
+            for (double[] result : results) {
+                variance += (result[0] - mean) * (result[0] - mean) / Math.max(1, results.size() - 1);
+            }
+            double error = studentT999(results.size() - 1) * Math.sqrt(variance / results.size());
+            System.out.printf("%-32s %12.2f %10.2f %10.1f%n",
+                    benchmark.name, mean, error, bytes);
+        }
+    }
+
+    /**
+     * Two-sided 99.9% quantile of Student's t with the given degrees of
+     * freedom, by the Cornish-Fisher expansion around the normal quantile:
+     * within 0.1% from 20 degrees of freedom, 5% at 4.
+     */
+    private static double studentT999(int freedom) {
+        if (freedom < 1) return Double.NaN;
+        double z = 3.2905267;
+        double z3 = z * z * z;
+        double z5 = z3 * z * z;
+        double z7 = z5 * z * z;
+        double n = freedom;
+        return z + (z3 + z) / (4 * n)
+                + (5 * z5 + 16 * z3 + 3 * z) / (96 * n * n)
+                + (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * n * n * n);
+    }
+
+    // Runs one benchmark in a new JVM with the same options and class path
+    private static List<double[]> fork(String name, int warmups, int iterations, long millis)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(EngineBenchmark.class.getName());
+        command.add(FORK_ARGUMENT);
+        command.add(name);
+        command.add(String.valueOf(warmups));
+        command.add(String.valueOf(iterations));
+        command.add(String.valueOf(millis));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        List<double[]> results = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length != 2) {
+                    throw new IllegalStateException("Fork of " + name + ": " + line);
+                }
+                results.add(new double[]{Double.parseDouble(fields[0]), Double.parseDouble(fields[1])});
+            }
+        }
+        if (process.waitFor() != 0 || results.size() != iterations) {
+            throw new IllegalStateException("Fork of " + name + " failed");
+        }
+        return results;
+    }
+
+    // In the forked JVM: prints "ns/op bytes/op" for every measured iteration
+    private static void runFork(String name, int warmups, int iterations, long millis) {
+        for (EngineBenchmark benchmark : all()) {
+            if (!benchmark.name.equals(name)) continue;
+            for (double[] result : benchmark.measure(warmups, iterations, millis)) {
+                System.out.println(result[0] + " " + result[1]);
+            }
+        }
+    }
+
+    private List<double[]> measure(int warmups, int iterations, long millis) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < warmups; i++) {
+            iteration(threads, millis);
+        }
+        List<double[]> results = new ArrayList<>();
+        for (int i = 0; i < iterations; i++) {
+            results.add(iteration(threads, millis));
+        }
+        return results;
+    }
+
+    private static List<EngineBenchmark> all() {
+        List<EngineBenchmark> benchmarks = new ArrayList<>();
+        for (int s = 0; s < SIZES.length; s++) {
+            int size = SIZES[s];
+            int depth = SEARCH_DEPTH[s];
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                Position[] corpus = corpus(size, phase);
+                String suffix = "." + size + "x" + size + "." + PHASES[phase];
+                benchmarks.add(new EngineBenchmark("findWinner" + suffix, corpus, 64,
+                        p -> p.board.findWinner().getWinner()));
+                benchmarks.add(new EngineBenchmark("checkWinnerAt" + suffix, corpus, 64,
+                        p -> p.board.checkWinnerAt(p.lastCell / size, p.lastCell % size).getWinner()));
+                benchmarks.add(new EngineBenchmark("isFull" + suffix, corpus, 64,
+                        p -> p.board.isFull() ? 1 : 0));
+                benchmarks.add(new EngineBenchmark("countEmpty" + suffix, corpus, 64,
+                        p -> p.board.countEmpty()));
+                benchmarks.add(new EngineBenchmark("copy" + suffix, corpus, 64,
+                        p -> p.board.copy().getHash()));
+                // Every placement and its undo: the incremental evaluation and hashing
+                benchmarks.add(new EngineBenchmark("makeUndo" + suffix, corpus, 4, p -> {
+                    long empty = p.board.getEmptyBits();
+                    long sum = 0;
+                    while (empty != 0) {
+                        int cell = Long.numberOfTrailingZeros(empty);
+                        empty &= empty - 1;
+                        p.board.makeMove(cell, p.toMove);
+                        sum += p.board.getThreatScore();
+                        p.board.undoMove(cell);
+                    }
+                    return sum;
+                }));
+                benchmarks.add(new EngineBenchmark("search" + suffix, corpus, 1, new Operation() {
+                    final SearchEngine x = engine('X', depth);
+                    final SearchEngine o = engine('O', depth);
+
+                    public void setup() {
+                        x.clearTable();
+                        o.clearTable();
+                    }
+
+                    public long run(Position p) {
+                        return (p.toMove == 'X' ? x : o).search(p.board);
+                    }
+                }));
+            }
+        }
+        return benchmarks;
+    }
+
+    private static SearchEngine engine(char symbol, int depth) {
+        SearchEngine engine = new SearchEngine(symbol, symbol == 'X' ? 'O' : 'X');
+        engine.setTimeBudget(0);
+        engine.setMaxDepth(depth);
+        return engine;
+    }
+
+    /**
+     * Positions with the given share of the cells taken, X and O alternating
+     * and nobody having won yet.
+     */
+    private static Position[] corpus(int size, int phase) {
+        SplittableRandom random = new SplittableRandom(size * 31L + phase);
+        int stones = Math.max(1, (int) Math.round(FILL[phase] * size * size));
+        Position[] corpus = new Position[CORPUS_SIZE];
+        int found = 0;
+        while (found < CORPUS_SIZE) {
+            GameBoard board = new GameBoard(size);
+            int last = -1;
+            for (int i = 0; i < stones; i++) {
+                long empty = board.getEmptyBits();
+                int pick = random.nextInt(Long.bitCount(empty));
+                for (int k = 0; k < pick; k++) {
+                    empty &= empty - 1;
+                }
+                last = Long.numberOfTrailingZeros(empty);
+                board.makeMove(last, i % 2 == 0 ? 'X' : 'O');
+            }
+            if (board.findWinner().hasWinner()) continue;
+            corpus[found++] = new Position(board, last, stones % 2 == 0 ? 'X' : 'O');
+        }
+        return corpus;
+    }
+
+    // One iteration: {ns per operation, bytes allocated per operation}
+    private double[] iteration(com.sun.management.ThreadMXBean threads, long millis) {
+        long end = System.nanoTime() + millis * 1_000_000L;
+        long operations = 0;
+        long nanos = 0;
+        long bytes = 0;
+        long result = 0;
+        while (System.nanoTime() < end) {
+            operation.setup();
+            long allocated = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int pass = 0; pass < passes; pass++) {
+                for (Position position : corpus) {
+                    result += operation.run(position);
+                }
+            }
+            nanos += System.nanoTime() - start;
+            bytes += threads.getCurrentThreadAllocatedBytes() - allocated;
+            operations += (long) passes * corpus.length;
+        }
+        sink += result;
+        return new double[]{(double) nanos / operations, (double) bytes / operations};
+    }
+}
@@ -1,28 +1,89 @@
 /**
  * GameBoard - Represents the game board with dynamic size
- * Supports 3x3, 4x4, and 5x5 grids
+ * Supports 3x3, 4x4, 5x5 and 7x7 grids, stored as bitboards
  */
 public class GameBoard {
-    private char[][] board;
+    // One bit per cell (index = row * size + col), enough for boards up to 8x8
+    private long xBits;
+    private long oBits;
+    private long shieldBits;
+    private long fullMask;
     private int size;
-    private boolean[][] shielded;
     private int winCondition;
+    private WinLines lines;
+    
+    // Base-3 code of every win line (see PatternTable) and the sum of their
+    // pattern scores, kept up to date on every change so the AI reads it for free
+    private short[] lineCodes;
+    private int[] patterns;
+    private int threatScore;
+    // Lines each player can still complete, from PatternTable.openFor
+    private byte[] open;
+    private int openForX;
+    private int openForO;
+    
+    // Zobrist hash of symbols and shields, updated on every change. hashes[t] is
+    // the hash of the board seen through symmetry t, hashes[0] the board itself.
+    private long[] hashes = new long[Symmetry.COUNT];
+    private int[][] symmetries;
+    private int[][] inverseSymmetries;
+    private static final long[] X_KEYS = new long[64];
+    private static final long[] O_KEYS = new long[64];
+    private static final long[] SHIELD_KEYS = new long[64];
+    public static final long SIDE_TO_MOVE_KEY;
+    
+    static {
+        java.util.SplittableRandom keys = new java.util.SplittableRandom(0x5EED7AC70EL);
+        for (int i = 0; i < 64; i++) {
+            X_KEYS[i] = keys.nextLong();
+            O_KEYS[i] = keys.nextLong();
+            SHIELD_KEYS[i] = keys.nextLong();
+        }
+        SIDE_TO_MOVE_KEY = keys.nextLong();
+    }
     
     public GameBoard(int size) {
         this.size = size;
-        this.board = new char[size][size];
-        this.shielded = new boolean[size][size];
         this.winCondition = (size == 3) ? 3 : (size == 4) ? 3 : 4;
+        this.fullMask = (size * size == 64) ? -1L : (1L << (size * size)) - 1;
+        this.lines = WinLines.forBoard(size, winCondition);
+        this.lineCodes = new short[lines.getLineCount()];
+        this.patterns = PatternTable.forWinCondition(winCondition);
+        this.open = PatternTable.openFor(winCondition);
+        this.symmetries = Symmetry.permutations(size);
+        this.inverseSymmetries = Symmetry.inverses(size);
         initializeBoard();
     }
     
+    // For copy: takes the size's tables from the original instead of looking them up again
+    private GameBoard(GameBoard other) {
+        this.size = other.size;
+        this.winCondition = other.winCondition;
+        this.fullMask = other.fullMask;
+        this.lines = other.lines;
+        this.lineCodes = other.lineCodes.clone();
+        this.patterns = other.patterns;
+        this.open = other.open;
+        this.symmetries = other.symmetries;
+        this.inverseSymmetries = other.inverseSymmetries;
+        this.xBits = other.xBits;
+        this.oBits = other.oBits;
+        this.shieldBits = other.shieldBits;
+        System.arraycopy(other.hashes, 0, this.hashes, 0, Symmetry.COUNT);
+        this.threatScore = other.threatScore;
+        this.openForX = other.openForX;
+        this.openForO = other.openForO;
+    }
+    
     private void initializeBoard() {
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                board[i][j] = ' ';
-                shielded[i][j] = false;
-            }
-        }
+        xBits = 0;
+        oBits = 0;
+        shieldBits = 0;
+        java.util.Arrays.fill(hashes, 0);
+        java.util.Arrays.fill(lineCodes, (short) 0);
+        threatScore = 0;
+        openForX = lines.getLineCount();
+        openForO = lines.getLineCount();
     }
     
     public void reset() {
@@ -33,47 +94,252 @@ public class GameBoard {
         return size;
     }
     
+    public int getWinCondition() {
+        return winCondition;
+    }
+    
+    public long getXBits() {
+        return xBits;
+    }
+    
+    public long getOBits() {
+        return oBits;
+    }
+    
+    public long getShieldBits() {
+        return shieldBits;
+    }
+    
+    public long getOccupiedBits() {
+        return xBits | oBits;
+    }
+    
+    public long getEmptyBits() {
+        return ~(xBits | oBits) & fullMask;
+    }
+    
+    public long getFullMask() {
+        return fullMask;
+    }
+    
+    /**
+     * Sum of the PatternTable scores of all win lines. Positive favours X.
+     */
+    public int getThreatScore() {
+        return threatScore;
+    }
+    
+    /**
+     * Number of win lines the player could still complete, i.e. without an
+     * opponent symbol in them
+     */
+    public int getOpenLines(char symbol) {
+        return symbol == 'X' ? openForX : symbol == 'O' ? openForO : 0;
+    }
+    
+    /**
+     * True if neither player can complete any line any more, so the game can
+     * only end in a draw by placements alone. Bomb and Swap can reopen lines.
+     */
+    public boolean isDead() {
+        return openForX == 0 && openForO == 0;
+    }
+    
+    public long getHash() {
+        return hashes[0];
+    }
+    
+    /**
+     * Index of the symmetry whose hash is smallest. Symmetric positions share
+     * that smallest hash, which the AI uses as transposition table key.
+     */
+    public int getCanonicalTransform() {
+        int best = 0;
+        for (int t = 1; t < Symmetry.COUNT; t++) {
+            if (hashes[t] < hashes[best]) best = t;
+        }
+        return best;
+    }
+    
+    public long getSymmetryHash(int transform) {
+        return hashes[transform];
+    }
+    
+    // Symmetry.permutations and inverses for this size, without their lock
+    public int[][] getSymmetries() {
+        return symmetries;
+    }
+    
+    public int[][] getInverseSymmetries() {
+        return inverseSymmetries;
+    }
+    
+    public long getBits(char symbol) {
+        return symbol == 'X' ? xBits : symbol == 'O' ? oBits : 0;
+    }
+    
     public char getCell(int row, int col) {
         if (isValidPosition(row, col)) {
-            return board[row][col];
+            long bit = 1L << (row * size + col);
+            if ((xBits & bit) != 0) return 'X';
+            if ((oBits & bit) != 0) return 'O';
         }
         return ' ';
     }
     
     public boolean setCell(int row, int col, char symbol) {
-        if (isValidPosition(row, col) && board[row][col] == ' ') {
-            board[row][col] = symbol;
-            return true;
+        if (isValidPosition(row, col)) {
+            int index = row * size + col;
+            if (((xBits | oBits) & (1L << index)) == 0) {
+                place(index, symbol);
+                return true;
+            }
         }
         return false;
     }
     
     public boolean forceSetCell(int row, int col, char symbol) {
-        if (isValidPosition(row, col) && !shielded[row][col]) {
-            board[row][col] = symbol;
-            return true;
+        if (isValidPosition(row, col)) {
+            int index = row * size + col;
+            if ((shieldBits & (1L << index)) == 0) {
+                remove(index);
+                place(index, symbol);
+                return true;
+            }
         }
         return false;
     }
     
     public boolean clearCell(int row, int col) {
-        if (isValidPosition(row, col) && !shielded[row][col]) {
-            board[row][col] = ' ';
-            return true;
+        if (isValidPosition(row, col)) {
+            int index = row * size + col;
+            if ((shieldBits & (1L << index)) == 0) {
+                remove(index);
+                return true;
+            }
         }
         return false;
     }
     
+    /**
+     * Places a symbol on an empty cell without validation. Used by the AI
+     * search together with undoMove to walk the game tree on one board.
+     */
+    public void makeMove(int index, char symbol) {
+        place(index, symbol);
+    }
+    
+    public void undoMove(int index) {
+        remove(index);
+    }
+    
+    /**
+     * Unshielded cells a bomb at index would clear: the 3x3 area around it.
+     * The search saves getXBits() & area and getOBits() & area before
+     * clearCells and puts them back with restoreCells.
+     */
+    public long bombArea(int index) {
+        int row = index / size;
+        int col = index % size;
+        long area = 0;
+        for (int i = Math.max(0, row - 1); i <= Math.min(size - 1, row + 1); i++) {
+            for (int j = Math.max(0, col - 1); j <= Math.min(size - 1, col + 1); j++) {
+                area |= 1L << (i * size + j);
+            }
+        }
+        return area & ~shieldBits;
+    }
+    
+    public void clearCells(long mask) {
+        for (long bits = mask & (xBits | oBits); bits != 0; bits &= bits - 1) {
+            remove(Long.numberOfTrailingZeros(bits));
+        }
+    }
+    
+    public void restoreCells(long xMask, long oMask) {
+        for (long bits = xMask; bits != 0; bits &= bits - 1) {
+            place(Long.numberOfTrailingZeros(bits), 'X');
+        }
+        for (long bits = oMask; bits != 0; bits &= bits - 1) {
+            place(Long.numberOfTrailingZeros(bits), 'O');
+        }
+    }
+    
+    // Flips an occupied cell to the other symbol; applying it twice undoes it
+    public void swapCell(int index) {
+        long bit = 1L << index;
+        if (((xBits | oBits) & bit) == 0) return;
+        char other = (xBits & bit) != 0 ? 'O' : 'X';
+        remove(index);
+        place(index, other);
+    }
+    
+    public void toggleShield(int index) {
+        shieldBits ^= 1L << index;
+        toggleKey(SHIELD_KEYS, index);
+    }
+    
+    private void place(int index, char symbol) {
+        if (symbol == 'X') {
+            xBits |= 1L << index;
+            toggleKey(X_KEYS, index);
+            updateLines(index, 1);
+        } else if (symbol == 'O') {
+            oBits |= 1L << index;
+            toggleKey(O_KEYS, index);
+            updateLines(index, 2);
+        }
+    }
+    
+    private void remove(int index) {
+        long bit = 1L << index;
+        if ((xBits & bit) != 0) {
+            xBits &= ~bit;
+            toggleKey(X_KEYS, index);
+            updateLines(index, -1);
+        } else if ((oBits & bit) != 0) {
+            oBits &= ~bit;
+            toggleKey(O_KEYS, index);
+            updateLines(index, -2);
+        }
+    }
+    
+    // Adds (or with a negative digit removes) the cell's digit in every line through it
+    private void updateLines(int index, int digit) {
+        int[] through = lines.getLinesThrough(index);
+        int[] values = lines.getPlaceValues(index);
+        for (int i = 0; i < through.length; i++) {
+            int line = through[i];
+            int before = open[lineCodes[line]];
+            threatScore -= patterns[lineCodes[line]];
+            lineCodes[line] += digit * values[i];
+            threatScore += patterns[lineCodes[line]];
+            int after = open[lineCodes[line]];
+            openForX += (after & PatternTable.OPEN_FOR_X) - (before & PatternTable.OPEN_FOR_X);
+            openForO += ((after & PatternTable.OPEN_FOR_O) - (before & PatternTable.OPEN_FOR_O)) >> 1;
+        }
+    }
+    
+    private void toggleKey(long[] keys, int index) {
+        for (int t = 0; t < Symmetry.COUNT; t++) {
+            hashes[t] ^= keys[symmetries[t][index]];
+        }
+    }
+    
     public boolean isShielded(int row, int col) {
         if (isValidPosition(row, col)) {
-            return shielded[row][col];
+            return (shieldBits & (1L << (row * size + col))) != 0;
         }
         return false;
     }
     
     public void setShield(int row, int col, boolean value) {
         if (isValidPosition(row, col)) {
-            shielded[row][col] = value;
+            int index = row * size + col;
+            if (value != ((shieldBits & (1L << index)) != 0)) {
+                shieldBits ^= 1L << index;
+                toggleKey(SHIELD_KEYS, index);
+            }
         }
     }
     
@@ -82,206 +348,81 @@ public class GameBoard {
     }
     
     public boolean isCellEmpty(int row, int col) {
-        return isValidPosition(row, col) && board[row][col] == ' ';
+        return isValidPosition(row, col) && ((xBits | oBits) & (1L << (row * size + col))) == 0;
     }
     
     public boolean isFull() {
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (board[i][j] == ' ') {
-                    return false;
-                }
-            }
-        }
-        return true;
+        return (xBits | oBits) == fullMask;
     }
     
     public char checkWinner() {
-        // Check rows
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j <= size - winCondition; j++) {
-                char first = board[i][j];
-                if (first != ' ') {
-                    boolean win = true;
-                    for (int k = 1; k < winCondition; k++) {
-                        if (board[i][j + k] != first) {
-                            win = false;
-                            break;
-                        }
-                    }
-                    if (win) return first;
-                }
-            }
-        }
-        
-        // Check columns
-        for (int i = 0; i <= size - winCondition; i++) {
-            for (int j = 0; j < size; j++) {
-                char first = board[i][j];
-                if (first != ' ') {
-                    boolean win = true;
-                    for (int k = 1; k < winCondition; k++) {
-                        if (board[i + k][j] != first) {
-                            win = false;
-                            break;
-                        }
-                    }
-                    if (win) return first;
-                }
-            }
-        }
-        
-        // Check diagonals (top-left to bottom-right)
-        for (int i = 0; i <= size - winCondition; i++) {
-            for (int j = 0; j <= size - winCondition; j++) {
-                char first = board[i][j];
-                if (first != ' ') {
-                    boolean win = true;
-                    for (int k = 1; k < winCondition; k++) {
-                        if (board[i + k][j + k] != first) {
-                            win = false;
-                            break;
-                        }
-                    }
-                    if (win) return first;
-                }
-            }
-        }
-        
-        // Check diagonals (top-right to bottom-left)
-        for (int i = 0; i <= size - winCondition; i++) {
-            for (int j = winCondition - 1; j < size; j++) {
-                char first = board[i][j];
-                if (first != ' ') {
-                    boolean win = true;
-                    for (int k = 1; k < winCondition; k++) {
-                        if (board[i + k][j - k] != first) {
-                            win = false;
-                            break;
-                        }
-                    }
-                    if (win) return first;
-                }
-            }
-        }
-        
-        return ' ';
+        return findWinner().getWinner();
     }
     
     public int[][] getWinningCells() {
-        // Check rows
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j <= size - winCondition; j++) {
-                char first = board[i][j];
-                if (first != ' ') {
-                    boolean win = true;
-                    for (int k = 1; k < winCondition; k++) {
-                        if (board[i][j + k] != first) {
-                            win = false;
-                            break;
-                        }
-                    }
-                    if (win) {
-                        int[][] cells = new int[winCondition][2];
-                        for (int k = 0; k < winCondition; k++) {
-                            cells[k] = new int[]{i, j + k};
-                        }
-                        return cells;
-                    }
-                }
-            }
-        }
-        
-        // Check columns
-        for (int i = 0; i <= size - winCondition; i++) {
-            for (int j = 0; j < size; j++) {
-                char first = board[i][j];
-                if (first != ' ') {
-                    boolean win = true;
-                    for (int k = 1; k < winCondition; k++) {
-                        if (board[i + k][j] != first) {
-                            win = false;
-                            break;
-                        }
-                    }
-                    if (win) {
-                        int[][] cells = new int[winCondition][2];
-                        for (int k = 0; k < winCondition; k++) {
-                            cells[k] = new int[]{i + k, j};
-                        }
-                        return cells;
-                    }
-                }
-            }
-        }
-        
-        // Check diagonals (top-left to bottom-right)
-        for (int i = 0; i <= size - winCondition; i++) {
-            for (int j = 0; j <= size - winCondition; j++) {
-                char first = board[i][j];
-                if (first != ' ') {
-                    boolean win = true;
-                    for (int k = 1; k < winCondition; k++) {
-                        if (board[i + k][j + k] != first) {
-                            win = false;
-                            break;
-                        }
-                    }
-                    if (win) {
-                        int[][] cells = new int[winCondition][2];
-                        for (int k = 0; k < winCondition; k++) {
-                            cells[k] = new int[]{i + k, j + k};
-                        }
-                        return cells;
-                    }
-                }
-            }
+        return findWinner().getCells();
+    }
+    
+    // Full scan of every line, for changes that may touch several cells at once
+    public WinResult findWinner() {
+        for (int line = 0; line < lines.getLineCount(); line++) {
+            long mask = lines.getMask(line);
+            if ((xBits & mask) == mask) return lines.getResult(line, 'X');
+            if ((oBits & mask) == mask) return lines.getResult(line, 'O');
         }
-        
-        // Check diagonals (top-right to bottom-left)
-        for (int i = 0; i <= size - winCondition; i++) {
-            for (int j = winCondition - 1; j < size; j++) {
-                char first = board[i][j];
-                if (first != ' ') {
-                    boolean win = true;
-                    for (int k = 1; k < winCondition; k++) {
-                        if (board[i + k][j - k] != first) {
-                            win = false;
-                            break;
-                        }
-                    }
-                    if (win) {
-                        int[][] cells = new int[winCondition][2];
-                        for (int k = 0; k < winCondition; k++) {
-                            cells[k] = new int[]{i + k, j - k};
-                        }
-                        return cells;
-                    }
-                }
-            }
+        return WinResult.NONE;
+    }
+    
+    // Only the lines through the last placed cell can have been completed by it
+    public WinResult checkWinnerAt(int row, int col) {
+        char symbol = getCell(row, col);
+        if (symbol == ' ') return WinResult.NONE;
+        long bits = getBits(symbol);
+        for (int line : lines.getLinesThrough(row * size + col)) {
+            long mask = lines.getMask(line);
+            if ((bits & mask) == mask) return lines.getResult(line, symbol);
         }
-        
-        return null;
+        return WinResult.NONE;
     }
     
     public int countEmpty() {
-        int count = 0;
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (board[i][j] == ' ') count++;
-            }
-        }
-        return count;
+        return size * size - Long.bitCount(xBits | oBits);
     }
     
     public GameBoard copy() {
-        GameBoard copy = new GameBoard(size);
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                copy.board[i][j] = this.board[i][j];
-                copy.shielded[i][j] = this.shielded[i][j];
+        return new GameBoard(this);
+    }
+    
+    /**
+     * WinResult - Winner of a board and the cells of the completed line
+     */
+    public static final class WinResult {
+        public static final WinResult NONE = new WinResult(' ', null);
+        
+        private final char winner;
+        private final int[][] cells;
+        
+        WinResult(char winner, int[][] cells) {
+            this.winner = winner;
+            this.cells = cells;
+        }
+        
+        public char getWinner() {
+            return winner;
+        }
+        
+        public boolean hasWinner() {
+            return winner != ' ';
+        }
+        
+        // A copy: the results are cached in WinLines and shared by every board of the size
+        public int[][] getCells() {
+            if (cells == null) return null;
+            int[][] copy = new int[cells.length][];
+            for (int i = 0; i < cells.length; i++) {
+                copy[i] = cells[i].clone();
             }
+            return copy;
         }
-        return copy;
     }
 }
@@ -0,0 +1,31 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * GameOverEvent - Flight Recorder event for GamePanel showing a win or a draw
+ */
+@Name("tictactoe.GameOver")
+@Label("Game Over")
+@Category({"Tic Tac Toe", "Game"})
+@Description("The game window showing the end of a game")
+@StackTrace(false)
+public class GameOverEvent extends jdk.jfr.Event {
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Winner")
+    @Description("Name of the winner, empty for a draw")
+    String winner;
+
+    @Label("Points")
+    int points;
+
+    @Label("Board Size")
+    int boardSize;
+
+    @Label("Moves")
+    int moves;
+}
@@ -4,23 +4,39 @@ import java.awt.event.*;
 import java.awt.geom.*;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * GamePanel - Main game board with Paper & Pencil theme
  * Papan permainan seperti grid di buku tulis
+ * The rules are played by a GameSession; this panel shows it and feeds it
+ * the clicks and the AI's moves.
  */
 public class GamePanel extends GameFrame.GradientPanel {
 
     private GameFrame frame;
+    private GameSession session;
     private GameBoard board;
     private Player player1;
     private Player player2;
-    private Player currentPlayer;
-    private boolean gameOver;
     private boolean classicMode;
     private String statusMessage;
     private int[][] winningCells;
 
+    // AI search runs off the Event Dispatch Thread on a snapshot of the board.
+    // gameId changes on every new game so a late result is never applied to it.
+    private final ExecutorService aiExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ai-search");
+        t.setDaemon(true);
+        return t;
+    });
+    private Future<?> aiTask;
+    private Timer aiTimer;
+    private int gameId;
+    private boolean aiThinking = false;
+
     // Power-up mode
     private PowerUp activePowerUp;
     private boolean powerUpMode = false;
@@ -50,38 +66,54 @@ public class GamePanel extends GameFrame.GradientPanel {
             if (pulseValue > Math.PI * 2)
                 pulseValue = 0;
             updateAnimations();
+            if (aiThinking)
+                updateThinkingStatus();
             repaint();
         });
     }
 
+    @Override
+    public void paint(Graphics g) {
+        PaintEvent event = new PaintEvent();
+        event.begin();
+        super.paint(g);
+        commitPaint(event, "GamePanel", this);
+    }
+
+    private static void commitPaint(PaintEvent event, String name, JComponent component) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.component = name;
+            event.width = component.getWidth();
+            event.height = component.getHeight();
+            event.commit();
+        }
+    }
+
     public void initGame(int gridSize, boolean vsAI, AIPlayer.Difficulty difficulty, boolean classicMode) {
+        cancelAI();
         removeAll();
         this.classicMode = classicMode;
 
-        board = new GameBoard(gridSize);
         player1 = new HumanPlayer("Player 1", 'X');
 
-        // Only give power-ups in Upnormal mode
-        if (!classicMode) {
-            player1.resetPowerUps();
-        }
-
         if (vsAI) {
-            player2 = new AIPlayer("Computer", 'O', 'X', difficulty);
+            AIPlayer ai = new AIPlayer("Computer", 'O', 'X', difficulty);
+            ai.setSearchThreads(Runtime.getRuntime().availableProcessors());
+            ai.setPondering(true);
+            ai.setOpponent(player1);
+            player2 = ai;
         } else {
             player2 = new HumanPlayer("Player 2", 'O');
         }
 
-        if (!classicMode) {
-            player2.resetPowerUps();
-        }
-
-        currentPlayer = player1;
-        gameOver = false;
+        // Only gives power-ups in Upnormal mode
+        session = new GameSession(gridSize, player1, player2, classicMode);
+        board = session.getBoard();
         winningCells = null;
         activePowerUp = null;
         powerUpMode = false;
-        statusMessage = currentPlayer.getName() + "'s turn (" + currentPlayer.getSymbol() + ")";
+        statusMessage = player1.getName() + "'s turn (" + player1.getSymbol() + ")";
 
         add(createTopPanel(), BorderLayout.NORTH);
         add(createBoardPanel(gridSize), BorderLayout.CENTER);
@@ -105,6 +137,7 @@ public class GamePanel extends GameFrame.GradientPanel {
         backBtn.setPreferredSize(new Dimension(85, 30));
         backBtn.setFont(GameFrame.getSketchFont(Font.BOLD, 12));
         backBtn.addActionListener(e -> {
+            cancelAI();
             animationTimer.stop();
             frame.showMenu();
         });
@@ -198,6 +231,14 @@ public class GamePanel extends GameFrame.GradientPanel {
                 });
             }
 
+            @Override
+            public void paint(Graphics g) {
+                PaintEvent event = new PaintEvent();
+                event.begin();
+                super.paint(g);
+                commitPaint(event, "cell", this);
+            }
+
             @Override
             protected void paintComponent(Graphics g) {
                 Graphics2D g2d = (Graphics2D) g;
@@ -218,7 +259,7 @@ public class GamePanel extends GameFrame.GradientPanel {
                 g2d.fillRoundRect(0, 0, getWidth(), getHeight(), 8, 8);
 
                 // Hover
-                if (hoverAlpha > 0 && !gameOver && cellValue == ' ') {
+                if (hoverAlpha > 0 && !session.isOver() && cellValue == ' ') {
                     g2d.setColor(new Color(255, 245, 180, (int) (hoverAlpha * 255)));
                     g2d.fillRoundRect(0, 0, getWidth(), getHeight(), 8, 8);
                 }
@@ -300,7 +341,7 @@ public class GamePanel extends GameFrame.GradientPanel {
                 g2d.fillRoundRect(0, 0, getWidth(), getHeight(), 10, 10);
 
                 Color borderColor;
-                if (currentPlayer == player && !gameOver) {
+                if (session.getCurrentPlayer() == player && !session.isOver()) {
                     borderColor = (player.getSymbol() == 'X') ? GameFrame.PENCIL_BLUE : GameFrame.PENCIL_RED;
                     g2d.setColor(new Color(255, 250, 200));
                     g2d.fillRoundRect(2, 2, getWidth() - 4, getHeight() - 4, 8, 8);
@@ -416,7 +457,7 @@ public class GamePanel extends GameFrame.GradientPanel {
                 Graphics2D g2d = (Graphics2D) g;
                 g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-                boolean available = currentPlayer != null && currentPlayer.hasPowerUp(type);
+                boolean available = session != null && session.getCurrentPlayer().hasPowerUp(type);
 
                 if (available) {
                     g2d.setColor(GameFrame.PAPER_BG);
@@ -449,9 +490,9 @@ public class GamePanel extends GameFrame.GradientPanel {
     }
 
     private void handleCellClick(int row, int col) {
-        if (gameOver)
+        if (session.isOver())
             return;
-        if (currentPlayer instanceof AIPlayer)
+        if (session.getCurrentPlayer() instanceof AIPlayer)
             return;
 
         if (!classicMode && powerUpMode && activePowerUp != null) {
@@ -464,24 +505,39 @@ public class GamePanel extends GameFrame.GradientPanel {
         }
     }
 
-    private void makeMove(int row, int col) {
-        board.setCell(row, col, currentPlayer.getSymbol());
+    private boolean makeMove(int row, int col) {
+        PlayerMoveEvent event = new PlayerMoveEvent();
+        event.begin();
+        Player player = session.getCurrentPlayer();
+        if (!session.place(row, col))
+            return false;
         addCellAnimation(row, col);
+        showTurnResult();
+        repaint();
+        event.end();
+        if (event.shouldCommit()) {
+            event.player = player.getName();
+            event.symbol = player.getSymbol();
+            event.row = row;
+            event.col = col;
+            event.commit();
+        }
+        return true;
+    }
 
-        char winner = board.checkWinner();
-        if (winner != ' ') {
-            handleWin(winner);
-        } else if (board.isFull()) {
+    // Shows how the session ended the last turn
+    private void showTurnResult() {
+        if (session.getOutcome() == GameSession.Outcome.WIN) {
+            handleWin();
+        } else if (session.getOutcome() == GameSession.Outcome.DRAW) {
             handleDraw();
         } else {
             switchPlayer();
         }
-
-        repaint();
     }
 
     private void switchPlayer() {
-        currentPlayer = (currentPlayer == player1) ? player2 : player1;
+        Player currentPlayer = session.getCurrentPlayer();
         statusMessage = currentPlayer.getName() + "'s turn (" + currentPlayer.getSymbol() + ")";
         statusLabel.setText(statusMessage);
         statusLabel.setForeground(currentPlayer.getSymbol() == 'X' ? GameFrame.PENCIL_BLUE : GameFrame.PENCIL_RED);
@@ -490,56 +546,143 @@ public class GamePanel extends GameFrame.GradientPanel {
             updatePowerUpButtons();
         }
 
-        if (currentPlayer instanceof AIPlayer && !gameOver) {
-            Timer aiTimer = new Timer(500, e -> {
-                int[] move = currentPlayer.makeMove(board);
-                if (move != null) {
-                    makeMove(move[0], move[1]);
-                }
-                ((Timer) e.getSource()).stop();
-            });
+        if (currentPlayer instanceof AIPlayer) {
+            aiTimer = new Timer(500, e -> startAISearch());
             aiTimer.setRepeats(false);
             aiTimer.start();
         }
     }
 
-    private void handleWin(char winner) {
-        gameOver = true;
-        winningCells = board.getWinningCells();
+    private void startAISearch() {
+        final Player ai = session.getCurrentPlayer();
+        final GameBoard snapshot = board.copy();
+        final int searchGameId = gameId;
+
+        aiThinking = true;
+        updateThinkingStatus();
+        if (ai instanceof AIPlayer) {
+            ((AIPlayer) ai).resetCancel();
+        }
+        aiTask = aiExecutor.submit(() -> {
+            int[] move = null;
+            try {
+                move = ai.makeMove(snapshot);
+            } catch (RuntimeException e) {
+                // The Future would keep it to itself; the turn still ends with a fallback move
+                e.printStackTrace();
+            }
+            final int[] chosen = move;
+            SwingUtilities.invokeLater(() -> applyAIMove(searchGameId, chosen));
+        });
+    }
+
+    private void applyAIMove(int searchGameId, int[] move) {
+        // Result of a search from a game that was left or restarted
+        if (searchGameId != gameId || session.isOver())
+            return;
+        aiThinking = false;
+        aiTask = null;
+        Player ai = session.getCurrentPlayer();
+        boolean played = false;
+        if (move != null && move.length > 2) {
+            // {row, col, kind}: the AI plays a power-up on that cell
+            if (selectPowerUp(Move.powerUpType(move[2]))) {
+                played = usePowerUpOnCell(move[0], move[1]);
+                if (!played) {
+                    cancelPowerUp();
+                }
+            }
+        } else if (move != null) {
+            played = makeMove(move[0], move[1]);
+        }
+        // No move, or one the session rejected: a random placement still ends the turn
+        if (!played && ai instanceof AIPlayer) {
+            int[] fallback = ((AIPlayer) ai).fallbackMove(board);
+            if (fallback != null) {
+                makeMove(fallback[0], fallback[1]);
+            }
+        }
+        // Keep searching while the human decides on a reply
+        if (!session.isOver() && ai instanceof AIPlayer && ((AIPlayer) ai).isPondering()) {
+            ((AIPlayer) ai).startPondering(board.copy());
+        }
+    }
+
+    private void cancelAI() {
+        gameId++;
+        aiThinking = false;
+        if (aiTimer != null) {
+            aiTimer.stop();
+            aiTimer = null;
+        }
+        if (aiTask != null) {
+            aiTask.cancel(true);
+            aiTask = null;
+        }
+        if (player2 instanceof AIPlayer) {
+            ((AIPlayer) player2).dispose();
+        }
+    }
 
-        Player winningPlayer = (winner == player1.getSymbol()) ? player1 : player2;
-        Player losingPlayer = (winner == player1.getSymbol()) ? player2 : player1;
+    // Nobody replies after the game is over, so a ponder search would only burn CPU
+    private void stopPondering() {
+        if (player2 instanceof AIPlayer) {
+            ((AIPlayer) player2).cancelPondering();
+        }
+    }
 
-        int basePoints = 10;
-        winningPlayer.incrementStreak();
-        int streakBonus = winningPlayer.getStreak() * 2;
-        int totalPoints = basePoints + streakBonus;
+    private void updateThinkingStatus() {
+        int dots = 1 + (int) (pulseValue / (Math.PI * 2) * 3);
+        statusMessage = session.getCurrentPlayer().getName() + " is thinking" + ".".repeat(dots);
+        statusLabel.setText(statusMessage);
+    }
 
-        winningPlayer.addScore(totalPoints);
-        losingPlayer.resetStreak();
+    private void handleWin() {
+        GameOverEvent event = new GameOverEvent();
+        event.begin();
+        stopPondering();
+        winningCells = session.getWinResult().getCells();
 
-        statusMessage = winningPlayer.getName() + " WINS! (+" + totalPoints + " pts)";
+        statusMessage = session.getWinner().getName() + " WINS! (+" + session.getPoints() + " pts)";
         statusLabel.setText(statusMessage);
         statusLabel.setForeground(new Color(80, 150, 80));
 
         updateScoreLabels();
+        commitGameOver(event);
     }
 
     private void handleDraw() {
-        gameOver = true;
-        statusMessage = "It's a DRAW!";
+        GameOverEvent event = new GameOverEvent();
+        event.begin();
+        stopPondering();
+        statusMessage = board.isFull() ? "It's a DRAW!" : "It's a DRAW! No line can be won";
         statusLabel.setText(statusMessage);
         statusLabel.setForeground(GameFrame.PENCIL_DARK);
+        commitGameOver(event);
+    }
 
-        player1.resetStreak();
-        player2.resetStreak();
+    private void commitGameOver(GameOverEvent event) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.outcome = session.getOutcome().name();
+            event.winner = session.getWinner() != null ? session.getWinner().getName() : "";
+            event.points = session.getPoints();
+            event.boardSize = board.getSize();
+            event.moves = session.getMoveCount();
+            event.commit();
+        }
     }
 
     private void activatePowerUp(Class<? extends PowerUp> type) {
-        if (classicMode || gameOver || currentPlayer instanceof AIPlayer)
-            return;
-        if (!currentPlayer.hasPowerUp(type))
+        // The buttons are for humans; the AI picks its power-ups in applyAIMove
+        if (session.getCurrentPlayer() instanceof AIPlayer)
             return;
+        selectPowerUp(type);
+    }
+
+    private boolean selectPowerUp(Class<? extends PowerUp> type) {
+        if (!session.canUsePowerUp(type))
+            return false;
 
         powerUpMode = true;
 
@@ -557,56 +700,44 @@ public class GamePanel extends GameFrame.GradientPanel {
         statusLabel.setText(statusMessage);
         statusLabel.setForeground(GameFrame.PENCIL_RED);
         repaint();
+        return true;
     }
 
-    private void usePowerUpOnCell(int row, int col) {
+    private boolean usePowerUpOnCell(int row, int col) {
         if (activePowerUp == null)
-            return;
-
-        char playerSymbol = currentPlayer.getSymbol();
-        char opponentSymbol = (playerSymbol == 'X') ? 'O' : 'X';
-
-        boolean success = false;
+            return false;
 
-        if (activePowerUp instanceof BombPowerUp) {
-            activePowerUp.use(board, row, col, playerSymbol, opponentSymbol);
-            currentPlayer.usePowerUp(BombPowerUp.class);
-            success = true;
-        } else if (activePowerUp instanceof ShieldPowerUp) {
-            if (board.getCell(row, col) == playerSymbol) {
-                activePowerUp.use(board, row, col, playerSymbol, opponentSymbol);
-                currentPlayer.usePowerUp(ShieldPowerUp.class);
-                success = true;
-            }
-        } else if (activePowerUp instanceof SwapPowerUp) {
-            if (board.getCell(row, col) == opponentSymbol && !board.isShielded(row, col)) {
-                activePowerUp.use(board, row, col, playerSymbol, opponentSymbol);
-                currentPlayer.usePowerUp(SwapPowerUp.class);
-                success = true;
-            }
-        }
+        PowerUpEvent event = new PowerUpEvent();
+        event.begin();
+        Player player = session.getCurrentPlayer();
+        Class<? extends PowerUp> type = activePowerUp.getClass();
 
-        if (success) {
+        // An invalid target keeps the power-up selected
+        boolean applied = session.usePowerUp(type, row, col);
+        if (applied) {
             powerUpMode = false;
             activePowerUp = null;
-
-            char winner = board.checkWinner();
-            if (winner != ' ') {
-                handleWin(winner);
-            } else if (board.isFull()) {
-                handleDraw();
-            } else {
-                switchPlayer();
-            }
+            showTurnResult();
         }
 
         updatePowerUpButtons();
         repaint();
+        event.end();
+        if (event.shouldCommit()) {
+            event.player = player.getName();
+            event.powerUp = type.getSimpleName();
+            event.row = row;
+            event.col = col;
+            event.applied = applied;
+            event.commit();
+        }
+        return applied;
     }
 
     private void cancelPowerUp() {
         powerUpMode = false;
         activePowerUp = null;
+        Player currentPlayer = session.getCurrentPlayer();
         statusMessage = currentPlayer.getName() + "'s turn (" + currentPlayer.getSymbol() + ")";
         statusLabel.setText(statusMessage);
         statusLabel.setForeground(GameFrame.PENCIL_DARK);
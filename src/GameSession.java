@@ -0,0 +1,208 @@
+/**
+ * GameSession - Rules of one game, without any UI
+ * Keeps the board and whose turn it is, applies placements and power-ups,
+ * detects wins and draws and scores the result: 10 points for a win plus
+ * twice the winner's streak. GamePanel drives one session per game and only
+ * shows what it reports; SelfPlayRunner plays them headless.
+ */
+public class GameSession {
+    public enum Outcome { PLAYING, WIN, DRAW }
+
+    public static final int WIN_POINTS = 10;
+
+    private final GameBoard board;
+    private final Player player1;
+    private final Player player2;
+    private final boolean classicMode;
+    private Player currentPlayer;
+    private Outcome outcome = Outcome.PLAYING;
+    private GameBoard.WinResult winResult = GameBoard.WinResult.NONE;
+    private Player winner;
+    private int points;
+    private int moveCount;
+
+    /**
+     * player1 (X) moves first. Power-ups are handed out anew in Upnormal
+     * mode and taken away in Classic mode; scores and streaks carry over.
+     */
+    public GameSession(int gridSize, Player player1, Player player2, boolean classicMode) {
+        this.board = new GameBoard(gridSize);
+        this.player1 = player1;
+        this.player2 = player2;
+        this.classicMode = classicMode;
+        this.currentPlayer = player1;
+        for (Player p : new Player[]{player1, player2}) {
+            if (classicMode) {
+                p.getPowerUps().clear();
+            } else {
+                p.resetPowerUps();
+            }
+        }
+    }
+
+    public GameBoard getBoard() {
+        return board;
+    }
+
+    public Player getPlayer1() {
+        return player1;
+    }
+
+    public Player getPlayer2() {
+        return player2;
+    }
+
+    public Player getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    public Player getOpponent(Player player) {
+        return player == player1 ? player2 : player1;
+    }
+
+    public boolean isClassicMode() {
+        return classicMode;
+    }
+
+    public boolean isOver() {
+        return outcome != Outcome.PLAYING;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    // The completed line, or WinResult.NONE
+    public GameBoard.WinResult getWinResult() {
+        return winResult;
+    }
+
+    // The winning player, or null
+    public Player getWinner() {
+        return winner;
+    }
+
+    // Points the winner got for this game
+    public int getPoints() {
+        return points;
+    }
+
+    // Placements and power-ups played so far
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Current player puts its symbol on an empty cell. Returns false (and
+     * changes nothing) if the game is over or the cell is taken.
+     */
+    public boolean place(int row, int col) {
+        if (isOver() || !board.isValidPosition(row, col) || !board.isCellEmpty(row, col))
+            return false;
+        board.setCell(row, col, currentPlayer.getSymbol());
+        moveCount++;
+
+        // Only the new symbol can have completed a line
+        finishTurn(board.checkWinnerAt(row, col));
+        return true;
+    }
+
+    public boolean canUsePowerUp(Class<? extends PowerUp> type) {
+        return !classicMode && !isOver() && currentPlayer.hasPowerUp(type);
+    }
+
+    /**
+     * Current player plays a power-up it holds on a cell: a Bomb anywhere,
+     * a Shield on an own cell, a Swap on an unshielded opponent cell.
+     * Returns false (and changes nothing) if that is not allowed.
+     */
+    public boolean usePowerUp(Class<? extends PowerUp> type, int row, int col) {
+        if (!canUsePowerUp(type) || !board.isValidPosition(row, col))
+            return false;
+        char playerSymbol = currentPlayer.getSymbol();
+        char opponentSymbol = (playerSymbol == 'X') ? 'O' : 'X';
+
+        boolean allowed;
+        if (type == ShieldPowerUp.class) {
+            allowed = board.getCell(row, col) == playerSymbol;
+        } else if (type == SwapPowerUp.class) {
+            allowed = board.getCell(row, col) == opponentSymbol && !board.isShielded(row, col);
+        } else {
+            allowed = true;
+        }
+        if (!allowed)
+            return false;
+
+        currentPlayer.usePowerUp(type).use(board, row, col, playerSymbol, opponentSymbol);
+        moveCount++;
+
+        // Bomb and Swap can change several lines at once, so scan the whole board
+        finishTurn(board.findWinner());
+        return true;
+    }
+
+    /**
+     * Applies a move as returned by Player.makeMove: {row, col} for a
+     * placement, {row, col, kind} with a Move kind for a power-up.
+     */
+    public boolean applyMove(int[] move) {
+        if (move == null)
+            return false;
+        if (move.length > 2) {
+            return usePowerUp(Move.powerUpType(move[2]), move[0], move[1]);
+        }
+        return place(move[0], move[1]);
+    }
+
+    /**
+     * Asks the current player for a move on a copy of the board and plays
+     * it. Returns false if the player has none (a human) or it is illegal.
+     */
+    public boolean playTurn() {
+        if (isOver())
+            return false;
+        return applyMove(currentPlayer.makeMove(board.copy()));
+    }
+
+    private void finishTurn(GameBoard.WinResult result) {
+        if (result.hasWinner()) {
+            handleWin(result);
+        } else if (isDrawn()) {
+            handleDraw();
+        } else {
+            currentPlayer = getOpponent(currentPlayer);
+        }
+    }
+
+    private void handleWin(GameBoard.WinResult result) {
+        outcome = Outcome.WIN;
+        winResult = result;
+        winner = (result.getWinner() == player1.getSymbol()) ? player1 : player2;
+        Player loser = getOpponent(winner);
+
+        winner.incrementStreak();
+        points = WIN_POINTS + winner.getStreak() * 2;
+        winner.addScore(points);
+        loser.resetStreak();
+    }
+
+    // Full board, or no line left that either player can complete. Bomb and
+    // Swap can reopen lines, so a dead board only ends the game once they are used up.
+    private boolean isDrawn() {
+        if (board.isFull())
+            return true;
+        if (!board.isDead())
+            return false;
+        for (Player p : new Player[]{player1, player2}) {
+            if (p.hasPowerUp(BombPowerUp.class) || p.hasPowerUp(SwapPowerUp.class))
+                return false;
+        }
+        return true;
+    }
+
+    private void handleDraw() {
+        outcome = Outcome.DRAW;
+        player1.resetStreak();
+        player2.resetStreak();
+    }
+}
@@ -0,0 +1,298 @@
+/**
+ * MctsEngine - Monte Carlo Tree Search (UCT) for the large boards
+ * Tree nodes live in parallel primitive arrays that are reused between
+ * searches, and playouts run on two local bitboards with random moves.
+ */
+public class MctsEngine {
+    private static final int DEFAULT_PLAYOUTS = 50_000;
+    private static final int DEFAULT_CAPACITY = 1 << 19;
+    // A leaf is expanded once it has been played out this many times
+    private static final int EXPAND_VISITS = 2;
+    private static final double EXPLORATION = 1.4;
+
+    private static final byte OPEN = 0;
+    private static final byte WIN = 1;
+    private static final byte DRAW = 2;
+
+    private final char symbol;
+    private long seed;
+
+    private int playoutBudget = DEFAULT_PLAYOUTS;
+    private long timeBudgetMillis;
+    private int capacity = DEFAULT_CAPACITY;
+
+    // Tree, indexed by node. Scores are in half points for the player who
+    // made the move into the node (win = 2, draw = 1).
+    private int[] parent;
+    private int[] firstChild;
+    private int[] childCount;
+    private int[] move;
+    private int[] visits;
+    private int[] score;
+    private byte[] result;
+    private int nodeCount;
+
+    private final int[] playoutCells = new int[64];
+    private int playouts;
+    private int predictedReply = -1;
+    private volatile boolean cancelled;
+
+    public MctsEngine(char symbol, long seed) {
+        this.symbol = symbol;
+        this.seed = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+    }
+
+    public void setPlayoutBudget(int playouts) {
+        this.playoutBudget = playouts;
+    }
+
+    public int getPlayoutBudget() {
+        return playoutBudget;
+    }
+
+    public void setTimeBudget(long millis) {
+        this.timeBudgetMillis = millis;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+    }
+
+    // Stops a running search from another thread after the current playout batch
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Clears an earlier cancel; search keeps it, so a cancel sent before the search started still counts
+    public void resetCancel() {
+        cancelled = false;
+    }
+
+    public long getTimeBudget() {
+        return timeBudgetMillis;
+    }
+
+    /**
+     * Most visited answer to the move chosen by the last search, or -1 if
+     * that part of the tree was never expanded
+     */
+    public int getPredictedReply() {
+        return predictedReply;
+    }
+
+    public int getPlayoutCount() {
+        return playouts;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Runs the playout budget from the given position, with this engine's
+     * symbol to move, and returns the most visited cell or -1 if the board
+     * is full.
+     */
+    public int search(GameBoard board) {
+        predictedReply = -1;
+        if (board.getEmptyBits() == 0) return -1;
+        if (parent == null) {
+            allocate();
+        }
+
+        WinLines lines = WinLines.forBoard(board.getSize(), board.getWinCondition());
+        long full = board.getFullMask();
+        long rootX = board.getXBits();
+        long rootO = board.getOBits();
+        boolean rootXToMove = symbol == 'X';
+
+        nodeCount = 1;
+        parent[0] = -1;
+        childCount[0] = 0;
+        visits[0] = 0;
+        score[0] = 0;
+        result[0] = OPEN;
+        move[0] = -1;
+
+        long deadline = timeBudgetMillis > 0 ? System.nanoTime() + timeBudgetMillis * 1_000_000L : Long.MAX_VALUE;
+        for (playouts = 0; playouts < playoutBudget; playouts++) {
+            if ((playouts & 255) == 255 && (cancelled || System.nanoTime() > deadline)) break;
+
+            long x = rootX;
+            long o = rootO;
+            boolean xToMove = rootXToMove;
+            int node = 0;
+
+            // Selection
+            while (childCount[node] > 0) {
+                node = selectChild(node);
+                if (xToMove) {
+                    x |= 1L << move[node];
+                } else {
+                    o |= 1L << move[node];
+                }
+                xToMove = !xToMove;
+            }
+
+            // Expansion
+            if (result[node] == OPEN && visits[node] >= EXPAND_VISITS
+                    && nodeCount + Long.bitCount(~(x | o) & full) <= capacity) {
+                expand(node, x, o, xToMove, full, lines);
+                node = firstChild[node] + nextInt(childCount[node]);
+                if (xToMove) {
+                    x |= 1L << move[node];
+                } else {
+                    o |= 1L << move[node];
+                }
+                xToMove = !xToMove;
+            }
+
+            // Simulation: 1 = X wins, 2 = O wins, 0 = draw
+            int winner;
+            if (result[node] == WIN) {
+                winner = xToMove ? 2 : 1;
+            } else if (result[node] == DRAW) {
+                winner = 0;
+            } else {
+                winner = playout(x, o, xToMove, full, lines);
+            }
+
+            // Backpropagation, alternating the player who moved into each node
+            boolean moverIsX = !xToMove;
+            while (node >= 0) {
+                visits[node]++;
+                if (winner == 0) {
+                    score[node] += 1;
+                } else if ((winner == 1) == moverIsX) {
+                    score[node] += 2;
+                }
+                moverIsX = !moverIsX;
+                node = parent[node];
+            }
+        }
+
+        int best = firstChild[0];
+        if (childCount[0] == 0) {
+            // Budget too small to expand the root: fall back to a random empty cell
+            long empty = ~(rootX | rootO) & full;
+            int pick = nextInt(Long.bitCount(empty));
+            for (int i = 0; i < pick; i++) {
+                empty &= empty - 1;
+            }
+            return Long.numberOfTrailingZeros(empty);
+        }
+        for (int child = firstChild[0] + 1; child < firstChild[0] + childCount[0]; child++) {
+            if (visits[child] > visits[best]) best = child;
+        }
+        if (childCount[best] > 0) {
+            int reply = firstChild[best];
+            for (int child = reply + 1; child < firstChild[best] + childCount[best]; child++) {
+                if (visits[child] > visits[reply]) reply = child;
+            }
+            predictedReply = move[reply];
+        }
+        return move[best];
+    }
+
+    private void allocate() {
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+        move = new int[capacity];
+        visits = new int[capacity];
+        score = new int[capacity];
+        result = new byte[capacity];
+    }
+
+    private void expand(int node, long x, long o, boolean xToMove, long full, WinLines lines) {
+        firstChild[node] = nodeCount;
+        int count = 0;
+        for (long empty = ~(x | o) & full; empty != 0; empty &= empty - 1) {
+            int cell = Long.numberOfTrailingZeros(empty);
+            int child = nodeCount++;
+            parent[child] = node;
+            childCount[child] = 0;
+            move[child] = cell;
+            visits[child] = 0;
+            score[child] = 0;
+
+            long mine = (xToMove ? x : o) | (1L << cell);
+            if (completesLine(mine, cell, lines)) {
+                result[child] = WIN;
+            } else if (((x | o) | (1L << cell)) == full) {
+                result[child] = DRAW;
+            } else {
+                result[child] = OPEN;
+            }
+            count++;
+        }
+        childCount[node] = count;
+    }
+
+    private int selectChild(int node) {
+        int first = firstChild[node];
+        int count = childCount[node];
+
+        // Unvisited children first, starting from a random one to avoid a row-major bias
+        int start = nextInt(count);
+        for (int i = 0; i < count; i++) {
+            int child = first + (start + i) % count;
+            if (visits[child] == 0) return child;
+        }
+
+        double logParent = Math.log(visits[node]);
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < first + count; child++) {
+            double n = visits[child];
+            double value = score[child] / (2 * n) + EXPLORATION * Math.sqrt(logParent / n);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    private int playout(long x, long o, boolean xToMove, long full, WinLines lines) {
+        int n = 0;
+        for (long empty = ~(x | o) & full; empty != 0; empty &= empty - 1) {
+            playoutCells[n++] = Long.numberOfTrailingZeros(empty);
+        }
+        while (n > 0) {
+            int k = nextInt(n);
+            int cell = playoutCells[k];
+            playoutCells[k] = playoutCells[--n];
+            long mine;
+            if (xToMove) {
+                x |= 1L << cell;
+                mine = x;
+            } else {
+                o |= 1L << cell;
+                mine = o;
+            }
+            if (completesLine(mine, cell, lines)) {
+                return xToMove ? 1 : 2;
+            }
+            xToMove = !xToMove;
+        }
+        return 0;
+    }
+
+    private static boolean completesLine(long bits, int cell, WinLines lines) {
+        for (int line : lines.getLinesThrough(cell)) {
+            long mask = lines.getMask(line);
+            if ((bits & mask) == mask) return true;
+        }
+        return false;
+    }
+
+    // xorshift64*: much cheaper than java.util.Random inside playouts
+    private int nextInt(int bound) {
+        seed ^= seed >>> 12;
+        seed ^= seed << 25;
+        seed ^= seed >>> 27;
+        long r = (seed * 0x2545F4914F6CDD1DL) >>> 33;
+        return (int) ((r * bound) >>> 31);
+    }
+}
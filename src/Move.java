@@ -0,0 +1,58 @@
+/**
+ * Move - Integer encoding of AI search moves
+ * A move is (kind << 6) | cell: a plain placement or one of the three
+ * power-ups aimed at a cell. Power-up inventories are packed into a bit
+ * mask, the engine's own power-ups in bits 0-2 and the opponent's in 3-5.
+ */
+public final class Move {
+    public static final int PLACE = 0;
+    public static final int BOMB = 1;
+    public static final int SHIELD = 2;
+    public static final int SWAP = 3;
+
+    private Move() {
+    }
+
+    public static int of(int kind, int cell) {
+        return (kind << 6) | cell;
+    }
+
+    public static int kind(int move) {
+        return move >>> 6;
+    }
+
+    public static int cell(int move) {
+        return move & 63;
+    }
+
+    public static int inventoryBit(int kind, boolean own) {
+        return 1 << (kind - 1 + (own ? 0 : 3));
+    }
+
+    public static Class<? extends PowerUp> powerUpType(int kind) {
+        switch (kind) {
+            case BOMB:
+                return BombPowerUp.class;
+            case SHIELD:
+                return ShieldPowerUp.class;
+            case SWAP:
+                return SwapPowerUp.class;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Inventory bits for the power-ups a player holds. Scans the player's
+     * list, so it is meant for the search root, not for every node.
+     */
+    public static int inventoryOf(Player player, boolean own) {
+        int inventory = 0;
+        for (int kind = BOMB; kind <= SWAP; kind++) {
+            if (player.hasPowerUp(powerUpType(kind))) {
+                inventory |= inventoryBit(kind, own);
+            }
+        }
+        return inventory;
+    }
+}
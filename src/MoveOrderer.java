@@ -0,0 +1,126 @@
+/**
+ * MoveOrderer - Orders candidate moves so alpha-beta finds cutoffs early
+ * Order: transposition table move, two killer moves per ply, then the
+ * history heuristic with a static center-out ranking as tie-breaker.
+ * Moves are Move codes; plain placements are simply the cell index.
+ */
+public class MoveOrderer {
+    public static final int MAX_PLY = 64;
+
+    private static final int HASH_MOVE_SCORE = 1 << 30;
+    private static final int KILLER_SCORE = 1 << 29;
+    private static final int[][] CENTER_RANKS = new int[9][];
+
+    // Room for every placement plus a few power-up moves
+    private static final int MAX_MOVES = 64 + 16;
+
+    private final int[][] moves = new int[MAX_PLY + 1][MAX_MOVES];
+    private final int[][] scores = new int[MAX_PLY + 1][MAX_MOVES];
+    private final int[][] killers = new int[MAX_PLY + 1][2];
+    // history[side][move], side 0 = the engine, 1 = its opponent
+    private final int[][] history = new int[2][256];
+
+    static {
+        for (int size = 1; size < CENTER_RANKS.length; size++) {
+            int[] ranks = new int[size * size];
+            int max = 2 * (size - 1) * (size - 1);
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    int dr = 2 * i - (size - 1);
+                    int dc = 2 * j - (size - 1);
+                    ranks[i * size + j] = max - (dr * dr + dc * dc) / 2;
+                }
+            }
+            CENTER_RANKS[size] = ranks;
+        }
+    }
+
+    /**
+     * Static rank of every cell: the center scores highest, corners lowest.
+     * Computed up front for every board size, so the search reads it without a lock.
+     */
+    public static int[] centerRanks(int size) {
+        return CENTER_RANKS[size];
+    }
+
+    // Clears killers and ages the history so older turns count less
+    public void newSearch() {
+        for (int[] killer : killers) {
+            killer[0] = TranspositionTable.NO_MOVE;
+            killer[1] = TranspositionTable.NO_MOVE;
+        }
+        for (int[] side : history) {
+            for (int i = 0; i < side.length; i++) {
+                side[i] >>= 2;
+            }
+        }
+    }
+
+    /**
+     * Fills the move list for a ply with every empty cell and its ordering
+     * score. Returns the number of moves.
+     */
+    public int generate(GameBoard board, int ply, int hashMove, boolean own) {
+        return generate(board, board.getEmptyBits(), ply, hashMove, own);
+    }
+    
+    // Same, restricted to the given candidate cells
+    public int generate(GameBoard board, long candidates, int ply, int hashMove, boolean own) {
+        int[] ranks = centerRanks(board.getSize());
+        int count = 0;
+        for (long empty = candidates; empty != 0; empty &= empty - 1) {
+            int cell = Long.numberOfTrailingZeros(empty);
+            count = add(ply, count, cell, hashMove, own, ranks[cell]);
+        }
+        return count;
+    }
+
+    /**
+     * Appends one move to the ply's list, ranked like a placement whose static
+     * rank is the given value. Returns the new count.
+     */
+    public int add(int ply, int count, int move, int hashMove, boolean own, int rank) {
+        int s;
+        if (move == hashMove) {
+            s = HASH_MOVE_SCORE;
+        } else if (move == killers[ply][0]) {
+            s = KILLER_SCORE + 1;
+        } else if (move == killers[ply][1]) {
+            s = KILLER_SCORE;
+        } else {
+            s = (history[own ? 0 : 1][move] << 7) + rank;
+        }
+        moves[ply][count] = move;
+        scores[ply][count] = s;
+        return count + 1;
+    }
+
+    /**
+     * Returns the best remaining move at position index of the ply's list,
+     * selection-sorting lazily since most nodes cut off after a few moves.
+     */
+    public int next(int ply, int index, int count) {
+        int[] list = moves[ply];
+        int[] score = scores[ply];
+        int best = index;
+        for (int i = index + 1; i < count; i++) {
+            if (score[i] > score[best]) best = i;
+        }
+        int move = list[best];
+        list[best] = list[index];
+        list[index] = move;
+        int s = score[best];
+        score[best] = score[index];
+        score[index] = s;
+        return move;
+    }
+
+    public void onCutoff(int ply, int move, boolean own, int draft) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] sideHistory = history[own ? 0 : 1];
+        sideHistory[move] = Math.min(sideHistory[move] + draft * draft, 1 << 20);
+    }
+}
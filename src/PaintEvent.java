@@ -0,0 +1,26 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * PaintEvent - Flight Recorder event for a paint pass of the game window
+ * A pass over the whole GamePanel contains the passes of its cells; cells
+ * are also painted alone by their hover animation.
+ */
+@Name("tictactoe.Paint")
+@Label("Paint")
+@Category({"Tic Tac Toe", "UI"})
+@Description("A paint pass of the game panel or of one board cell")
+@StackTrace(false)
+public class PaintEvent extends jdk.jfr.Event {
+    @Label("Component")
+    String component;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+}
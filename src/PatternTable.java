@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * PatternTable - Evaluation score of every window of winCondition cells
+ * A window is encoded in base 3 with one digit per cell (0 empty, 1 X, 2 O),
+ * the first cell of the line being the lowest digit, and its score is read
+ * from a table of 3^winCondition entries. Positive scores favour X.
+ *
+ * The default scores count the symbols of a window only one player holds.
+ * They can be tuned with a file named by the tictactoe.patterns system
+ * property, one "pattern = score" per line with the pattern written from
+ * X's side, e.g. "XX.X = 40". A pattern's mirror image gets the same score
+ * and its O version the negated one; patterns of another length are ignored.
+ *
+ * A second table tells which players can still complete a window at all.
+ */
+public final class PatternTable {
+    public static final String WEIGHTS_PROPERTY = "tictactoe.patterns";
+
+    // Score of a window holding k symbols of one player and none of the other
+    private static final int[] DEFAULT_WEIGHTS = {0, 1, 4, 16, 64};
+    private static final int[][] CACHE = new int[9][];
+    private static final byte[][] OPEN_CACHE = new byte[9][];
+
+    // Bits of openFor: the window holds no O, or no X
+    public static final int OPEN_FOR_X = 1;
+    public static final int OPEN_FOR_O = 2;
+
+    private PatternTable() {
+    }
+
+    public static synchronized int[] forWinCondition(int winCondition) {
+        int[] scores = CACHE[winCondition];
+        if (scores == null) {
+            scores = build(winCondition);
+            CACHE[winCondition] = scores;
+        }
+        return scores;
+    }
+
+    /**
+     * openFor(winCondition)[code] has OPEN_FOR_X if X could still fill the
+     * window (no O in it) and OPEN_FOR_O likewise.
+     */
+    public static synchronized byte[] openFor(int winCondition) {
+        byte[] open = OPEN_CACHE[winCondition];
+        if (open == null) {
+            open = new byte[forWinCondition(winCondition).length];
+            for (int code = 0; code < open.length; code++) {
+                boolean hasX = false;
+                boolean hasO = false;
+                for (int rest = code; rest > 0; rest /= 3) {
+                    hasX |= rest % 3 == 1;
+                    hasO |= rest % 3 == 2;
+                }
+                open[code] = (byte) ((hasO ? 0 : OPEN_FOR_X) | (hasX ? 0 : OPEN_FOR_O));
+            }
+            OPEN_CACHE[winCondition] = open;
+        }
+        return open;
+    }
+
+    private static int[] build(int winCondition) {
+        int count = 1;
+        for (int k = 0; k < winCondition; k++) {
+            count *= 3;
+        }
+        int[] scores = new int[count];
+        for (int code = 0; code < count; code++) {
+            int x = 0;
+            int o = 0;
+            for (int rest = code; rest > 0; rest /= 3) {
+                if (rest % 3 == 1) x++;
+                if (rest % 3 == 2) o++;
+            }
+            scores[code] = o == 0 ? DEFAULT_WEIGHTS[x] : x == 0 ? -DEFAULT_WEIGHTS[o] : 0;
+        }
+
+        String file = System.getProperty(WEIGHTS_PROPERTY);
+        if (file != null) {
+            try {
+                // Into a copy, so a bad line leaves none of the file applied
+                int[] loaded = scores.clone();
+                load(file, winCondition, loaded);
+                scores = loaded;
+            } catch (IOException | IllegalArgumentException e) {
+                // Bad weights file: keep playing with the defaults
+                e.printStackTrace();
+            }
+        }
+        return scores;
+    }
+
+    private static void load(String file, int winCondition, int[] scores) throws IOException {
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            int eq = line.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected pattern = score: " + line);
+            }
+            String pattern = line.substring(0, eq).trim().toUpperCase();
+            if (pattern.length() != winCondition) continue;
+            int score = Integer.parseInt(line.substring(eq + 1).trim());
+
+            String mirror = new StringBuilder(pattern).reverse().toString();
+            scores[encode(pattern, false)] = score;
+            scores[encode(mirror, false)] = score;
+            scores[encode(pattern, true)] = -score;
+            scores[encode(mirror, true)] = -score;
+        }
+    }
+
+    // Base-3 code of a pattern, optionally with the colours swapped
+    private static int encode(String pattern, boolean swap) {
+        int code = 0;
+        for (int k = pattern.length() - 1; k >= 0; k--) {
+            char c = pattern.charAt(k);
+            int digit;
+            if (c == '.') {
+                digit = 0;
+            } else if (c == 'X') {
+                digit = swap ? 2 : 1;
+            } else if (c == 'O') {
+                digit = swap ? 1 : 2;
+            } else {
+                throw new IllegalArgumentException("Unknown cell '" + c + "' in pattern " + pattern);
+            }
+            code = code * 3 + digit;
+        }
+        return code;
+    }
+}
@@ -0,0 +1,28 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * PlayerMoveEvent - Flight Recorder event for a placement played in GamePanel
+ * Covers the rules and the UI updates that follow, up to the repaint request.
+ */
+@Name("tictactoe.PlayerMove")
+@Label("Player Move")
+@Category({"Tic Tac Toe", "Game"})
+@Description("A symbol placed on the board in the game window")
+@StackTrace(false)
+public class PlayerMoveEvent extends jdk.jfr.Event {
+    @Label("Player")
+    String player;
+
+    @Label("Symbol")
+    char symbol;
+
+    @Label("Row")
+    int row;
+
+    @Label("Column")
+    int col;
+}
@@ -0,0 +1,32 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * PowerUpEvent - Flight Recorder event for a power-up played on a cell in GamePanel
+ * Recorded for invalid targets too, which leave the power-up selected.
+ */
+@Name("tictactoe.PowerUp")
+@Label("Power-Up")
+@Category({"Tic Tac Toe", "Game"})
+@Description("A power-up played on a cell in the game window")
+@StackTrace(false)
+public class PowerUpEvent extends jdk.jfr.Event {
+    @Label("Player")
+    String player;
+
+    @Label("Power-Up")
+    String powerUp;
+
+    @Label("Row")
+    int row;
+
+    @Label("Column")
+    int col;
+
+    @Label("Applied")
+    @Description("False if the cell was not a valid target")
+    boolean applied;
+}
@@ -0,0 +1,313 @@
+/**
+ * ProofNumberSolver - Depth-first proof-number search for proving positions
+ * won, drawn or lost
+ * Every position carries the number of leaves that still have to be proved
+ * (phi) or disproved (delta) for the side to move to reach its goal, and the
+ * search always works below the child that is cheapest to settle, until
+ * that child's numbers pass thresholds derived from its siblings (df-pn).
+ * That goes straight for the narrow forced lines that make up most wins on
+ * these boards. A position is solved with two proofs: first that the side
+ * to move wins, then that the other side does not.
+ *
+ * Numbers are kept in a transposition table of primitive arrays sized by
+ * the memory limit, so positions reached by different move orders are
+ * proved once; the search gives up with UNKNOWN at the node limit.
+ * Power-ups are not part of the proof.
+ *
+ * Usage: java ProofNumberSolver size [nodeLimit] [memoryMB]
+ * proves every distinct opening move of X on the empty board.
+ */
+public class ProofNumberSolver {
+    public static final int WIN = EndgameSolver.WIN;
+    public static final int DRAW = EndgameSolver.DRAW;
+    public static final int LOSS = EndgameSolver.LOSS;
+    public static final int UNKNOWN = 2;
+
+    public static final long DEFAULT_NODE_LIMIT = 50_000_000;
+    public static final long DEFAULT_MEMORY_BYTES = 256L << 20;
+
+    private static final int INFINITY = 1 << 28;
+    // Two keys and two numbers per table entry
+    private static final int BYTES_PER_ENTRY = 2 * 8 + 2 * 4;
+
+    // Results of a single proof
+    private static final int PROVEN = 1;
+    private static final int DISPROVEN = 0;
+    private static final int OPEN = -1;
+
+    // Position status for the side to move
+    private static final int MOVER_WINS = 0;
+    private static final int MOVER_LOSES = 1;
+    private static final int BOARD_FULL = 2;
+    private static final int PLAYING = 3;
+
+    private final long nodeLimit;
+    private final int tableBits;
+    private final long[] tableMine;
+    private final long[] tableTheirs;
+    private final int[] tablePhi;
+    private final int[] tableDelta;
+    private int foundPhi;
+    private int foundDelta;
+
+    // Children of the node being worked on at each ply
+    private final int[][] childCells = new int[65][64];
+    private final int[][] childPhi = new int[65][64];
+    private final int[][] childDelta = new int[65][64];
+
+    private WinLines lines;
+    private int winCondition;
+    private long full;
+    private int[] order;
+    // Filled by status(): the cells worth playing, and an immediate win
+    private long candidates;
+    private int winningCell;
+
+    private long expansions;
+    private volatile boolean cancelled;
+    private int resultPhi;
+    private int resultDelta;
+    private int rootBest;
+    private int bestMove;
+
+    public ProofNumberSolver() {
+        this(DEFAULT_NODE_LIMIT, DEFAULT_MEMORY_BYTES);
+    }
+
+    /**
+     * nodeLimit caps the expanded nodes over both proofs, memoryBytes the
+     * size of the transposition table.
+     */
+    public ProofNumberSolver(long nodeLimit, long memoryBytes) {
+        this.nodeLimit = nodeLimit;
+        long entries = Math.max(1024, Math.min(1L << 30, memoryBytes / BYTES_PER_ENTRY));
+        this.tableBits = 63 - Long.numberOfLeadingZeros(entries);
+        tableMine = new long[1 << tableBits];
+        tableTheirs = new long[1 << tableBits];
+        tablePhi = new int[1 << tableBits];
+        tableDelta = new int[1 << tableBits];
+    }
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        long nodeLimit = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_NODE_LIMIT;
+        long memory = args.length > 2 ? Long.parseLong(args[2]) << 20 : DEFAULT_MEMORY_BYTES;
+        ProofNumberSolver solver = new ProofNumberSolver(nodeLimit, memory);
+
+        int[][] perms = Symmetry.permutations(size);
+        for (int cell = 0; cell < size * size; cell++) {
+            // One opening per symmetry class
+            boolean first = true;
+            for (int[] perm : perms) {
+                first &= perm[cell] >= cell;
+            }
+            if (!first) continue;
+
+            GameBoard board = new GameBoard(size);
+            board.makeMove(cell, 'X');
+            long start = System.nanoTime();
+            int value = solver.solve(board, 'O');
+            String result = value == UNKNOWN ? "unknown"
+                    : value == LOSS ? "X wins" : value == WIN ? "O wins" : "draw";
+            System.out.printf("%dx%d X at (%d,%d): %s, %d nodes, %d ms%n",
+                    size, size, cell / size, cell % size, result, solver.getNodeCount(),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * WIN, DRAW or LOSS for the given side to move, or UNKNOWN if the node
+     * limit was reached first.
+     */
+    public int solve(GameBoard board, char side) {
+        lines = WinLines.forBoard(board.getSize(), board.getWinCondition());
+        winCondition = board.getWinCondition();
+        full = board.getFullMask();
+        order = EndgameSolver.centerOrder(board.getSize());
+        expansions = 0;
+        bestMove = SearchEngine.NO_MOVE;
+
+        long mine = board.getBits(side);
+        long theirs = board.getBits(side == 'X' ? 'O' : 'X');
+        switch (status(mine, theirs)) {
+            case MOVER_WINS:
+                bestMove = winningCell;
+                return WIN;
+            case MOVER_LOSES:
+                bestMove = Long.numberOfTrailingZeros(~(mine | theirs) & full);
+                return LOSS;
+            case BOARD_FULL:
+                return DRAW;
+            default:
+                break;
+        }
+
+        int win = prove(mine, theirs, true);
+        if (win == OPEN) return UNKNOWN;
+        if (win == PROVEN) {
+            bestMove = rootBest;
+            return WIN;
+        }
+        // Drawn: a move that keeps the other side from winning; lost: the most stubborn one
+        int hold = prove(mine, theirs, false);
+        if (hold == OPEN) return UNKNOWN;
+        bestMove = rootBest;
+        return hold == PROVEN ? DRAW : LOSS;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Clears an earlier cancel; solve keeps it, so a cancel sent before the solve started still counts
+    public void resetCancel() {
+        cancelled = false;
+    }
+
+    // Cell to play from the last solved position, or NO_MOVE
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    // Nodes expanded by the last solve
+    public long getNodeCount() {
+        return expansions;
+    }
+
+    // One proof: PROVEN if the side to move at the root reaches its goal
+    private int prove(long mine, long theirs, boolean attackerMoves) {
+        java.util.Arrays.fill(tableMine, 0);
+        java.util.Arrays.fill(tableTheirs, 0);
+        mid(mine, theirs, attackerMoves, 0, INFINITY, INFINITY);
+        if (resultPhi != 0 && resultDelta != 0) return OPEN;
+        return resultPhi == 0 ? PROVEN : DISPROVEN;
+    }
+
+    /**
+     * Multiple iterative deepening: works below the node until its phi or
+     * delta reaches the threshold. phi is the proof number of the goal of the
+     * side to move (the attacker's win, or the defender keeping it off),
+     * delta its disproof number.
+     */
+    private void mid(long mine, long theirs, boolean attacker, int ply, int thPhi, int thDelta) {
+        expansions++;
+        status(mine, theirs);
+        long moves = candidates;
+        int[] cells = childCells[ply];
+        int[] fixedPhi = childPhi[ply];
+        int[] fixedDelta = childDelta[ply];
+        int count = 0;
+        for (int cell : order) {
+            long bit = 1L << cell;
+            if ((moves & bit) == 0) continue;
+            cells[count] = cell;
+            // Settled children keep their numbers; open ones start from their mobility
+            int result = status(theirs, mine | bit);
+            boolean childWins = result == MOVER_WINS || (result == BOARD_FULL && attacker);
+            if (result == PLAYING) {
+                fixedPhi[count] = -1;
+                fixedDelta[count] = Long.bitCount(candidates);
+            } else {
+                fixedPhi[count] = childWins ? 0 : INFINITY;
+                fixedDelta[count] = childWins ? INFINITY : 0;
+            }
+            count++;
+        }
+
+        while (true) {
+            int phi = INFINITY;
+            int second = INFINITY;
+            long delta = 0;
+            int best = 0;
+            int bestPhi = 0;
+            for (int i = 0; i < count; i++) {
+                int cp;
+                int cd;
+                if (fixedPhi[i] >= 0) {
+                    cp = fixedPhi[i];
+                    cd = fixedDelta[i];
+                } else if (lookup(theirs, mine | (1L << cells[i]))) {
+                    cp = foundPhi;
+                    cd = foundDelta;
+                } else {
+                    cp = 1;
+                    cd = fixedDelta[i];
+                }
+                delta += cp;
+                if (cd < phi) {
+                    second = phi;
+                    phi = cd;
+                    best = i;
+                    bestPhi = cp;
+                } else if (cd < second) {
+                    second = cd;
+                }
+            }
+            int sum = (int) Math.min(INFINITY, delta);
+            store(mine, theirs, phi, sum);
+            if (ply == 0) {
+                rootBest = cells[best];
+            }
+            if (phi >= thPhi || sum >= thDelta || expansions >= nodeLimit || cancelled) {
+                resultPhi = phi;
+                resultDelta = sum;
+                return;
+            }
+            int childThPhi = (int) Math.min(INFINITY, (long) thDelta - sum + bestPhi);
+            int childThDelta = Math.min(thPhi, second == INFINITY ? INFINITY : second + 1);
+            mid(theirs, mine | (1L << cells[best]), !attacker, ply + 1, childThPhi, childThDelta);
+        }
+    }
+
+    /**
+     * Status for the side to move on mine; sets candidates to the moves
+     * worth trying (a forced block or every empty cell) and winningCell.
+     */
+    private int status(long mine, long theirs) {
+        long empty = ~(mine | theirs) & full;
+        candidates = 0;
+        if (empty == 0) return BOARD_FULL;
+        long wins = winningCells(mine, theirs);
+        if (wins != 0) {
+            winningCell = Long.numberOfTrailingZeros(wins);
+            return MOVER_WINS;
+        }
+        long threats = winningCells(theirs, mine);
+        if (Long.bitCount(threats) > 1) return MOVER_LOSES;
+        candidates = threats != 0 ? threats : empty;
+        return PLAYING;
+    }
+
+    private long winningCells(long bits, long blockers) {
+        long empty = ~(bits | blockers) & full;
+        long cells = 0;
+        for (int line = 0; line < lines.getLineCount(); line++) {
+            long mask = lines.getMask(line);
+            if ((blockers & mask) == 0 && Long.bitCount(bits & mask) == winCondition - 1) {
+                cells |= mask & empty;
+            }
+        }
+        return cells;
+    }
+
+    private boolean lookup(long mine, long theirs) {
+        int slot = slotOf(mine, theirs);
+        if (tableMine[slot] != mine || tableTheirs[slot] != theirs) return false;
+        foundPhi = tablePhi[slot];
+        foundDelta = tableDelta[slot];
+        return true;
+    }
+
+    private void store(long mine, long theirs, int phi, int delta) {
+        int slot = slotOf(mine, theirs);
+        tableMine[slot] = mine;
+        tableTheirs[slot] = theirs;
+        tablePhi[slot] = phi;
+        tableDelta[slot] = delta;
+    }
+
+    private int slotOf(long mine, long theirs) {
+        long h = mine * 0x9E3779B97F4A7C15L ^ theirs * 0xC2B2AE3D27D4EB4FL;
+        return (int) (h >>> (64 - tableBits));
+    }
+}
@@ -0,0 +1,962 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SearchEngine - Iterative deepening alpha-beta search used by the HARD AI
+ * Deepens one ply at a time until the time or node budget runs out and
+ * plays the best move of the last depth that finished. The core is negamax
+ * with principal variation search: after the first move, moves are only
+ * proved worse with a null window and re-searched when that fails, and each
+ * depth starts with an aspiration window around the previous score. With more than one
+ * thread the root moves are split over a ForkJoinPool (Young Brothers Wait:
+ * the first move is searched alone to get an alpha bound for the others).
+ * In Upnormal mode the power-ups the players still hold are moves too.
+ * Near the end of a game without power-ups it solves the position exactly.
+ */
+public class SearchEngine {
+    public static final int NO_MOVE = TranspositionTable.NO_MOVE;
+
+    // Far above any threat score, so wins and evaluations never overlap
+    static final int WIN_SCORE = 100_000;
+    static final int WIN_THRESHOLD = WIN_SCORE - 64;
+    private static final int MAX_EVAL = WIN_THRESHOLD - 1;
+    // Outside every score, and safe to negate
+    private static final int INFINITE = WIN_SCORE + 1;
+
+    // Half-width of the first aspiration window; it grows fourfold on each failure
+    private static final int ASPIRATION_WINDOW = 32;
+
+    private static final int TABLE_SIZE_BITS = 18;
+    private static final long DEFAULT_TIME_BUDGET_MILLIS = 1000;
+
+    // Power-up moves are only tried this close to the root, on a few targets each
+    private static final int POWER_UP_PLIES = 2;
+    private static final int BOMB_TARGETS = 3;
+    private static final int SWAP_TARGETS = 3;
+    private static final int SHIELD_TARGETS = 2;
+    private static final long[] INVENTORY_KEYS = new long[64];
+
+    private static final int BOMBS = Move.inventoryBit(Move.BOMB, true) | Move.inventoryBit(Move.BOMB, false);
+
+    // Power-ups that can reopen a blocked line
+    private static final int REOPENERS = Move.inventoryBit(Move.BOMB, true) | Move.inventoryBit(Move.SWAP, true)
+            | Move.inventoryBit(Move.BOMB, false) | Move.inventoryBit(Move.SWAP, false);
+
+    // Empty cells at which the exact endgame solve starts, before adapting
+    private static final int DEFAULT_ENDGAME_EMPTY = 14;
+
+    static {
+        java.util.SplittableRandom keys = new java.util.SplittableRandom(0x1417E7702EL);
+        // Index 0 (no power-ups left) keeps the plain board key
+        for (int i = 1; i < INVENTORY_KEYS.length; i++) {
+            INVENTORY_KEYS[i] = keys.nextLong();
+        }
+    }
+
+    private final char symbol;
+    private final char opponentSymbol;
+    private TranspositionTable table;
+    private final MoveOrderer orderer = new MoveOrderer();
+    private EndgameSolver solver;
+    private int endgameEmpty = DEFAULT_ENDGAME_EMPTY;
+
+    // Parallel search: workers share the table and the root's alpha bound
+    private final SearchEngine parent;
+    private int threads = 1;
+    private ForkJoinPool pool;
+    private ThreadLocal<SearchEngine> workers;
+    private final List<SearchEngine> workerList = new ArrayList<>();
+    private final AtomicLong sharedNodes = new AtomicLong();
+    private AtomicInteger sharedAlpha;
+    private volatile boolean stopped;
+    private volatile boolean cancelled;
+    private volatile boolean sharedHorizon;
+    // Only trust table entries of exactly the needed draft, so results do not
+    // depend on which thread stored what first
+    private boolean exactDraft;
+
+    // Limits, 0 means unlimited
+    private long timeBudgetMillis = DEFAULT_TIME_BUDGET_MILLIS;
+    private long nodeBudget;
+    private int maxDepth;
+
+    // Per-search state
+    private long nodes;
+    private long deadline;
+    private boolean aborted;
+    private boolean horizonReached;
+    private int completedDepth;
+    private int lastScore;
+
+    // Triangular principal variation table: pv[ply] holds the line from ply on
+    private final int[][] pv = new int[MoveOrderer.MAX_PLY + 1][MoveOrderer.MAX_PLY + 1];
+    private final int[] pvLength = new int[MoveOrderer.MAX_PLY + 1];
+    private int[] principalVariation = new int[0];
+
+    // Counters of the current search while collecting, else null
+    private SearchStats stats;
+
+    // Cells cleared by a bomb played at each ply, to undo it
+    private final long[] bombX = new long[MoveOrderer.MAX_PLY + 1];
+    private final long[] bombO = new long[MoveOrderer.MAX_PLY + 1];
+    private final int[] targetMoves = new int[4];
+    private final int[] targetScores = new int[4];
+
+    public SearchEngine(char symbol, char opponentSymbol) {
+        this.symbol = symbol;
+        this.opponentSymbol = opponentSymbol;
+        this.parent = null;
+    }
+
+    private SearchEngine(SearchEngine parent) {
+        this.symbol = parent.symbol;
+        this.opponentSymbol = parent.opponentSymbol;
+        this.parent = parent;
+        this.table = parent.table;
+        this.exactDraft = true;
+        this.stats = parent.stats != null ? new SearchStats() : null;
+    }
+
+    /**
+     * Number of threads for the root split (1 = sequential search). At a fixed
+     * depth the parallel search returns the same move on every run.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setTimeBudget(long millis) {
+        this.timeBudgetMillis = millis;
+    }
+
+    public long getTimeBudget() {
+        return timeBudgetMillis;
+    }
+
+    public void setNodeBudget(long nodes) {
+        this.nodeBudget = nodes;
+    }
+
+    public long getNodeBudget() {
+        return nodeBudget;
+    }
+
+    public void setMaxDepth(int depth) {
+        this.maxDepth = depth;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Number of empty cells at or below which positions without power-ups are
+     * solved exactly. Grows while solves stay cheap, shrinks when one fails.
+     */
+    public int getEndgameThreshold() {
+        return endgameEmpty;
+    }
+
+    public void setEndgameThreshold(int empty) {
+        this.endgameEmpty = empty;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    public int getLastScore() {
+        return lastScore;
+    }
+
+    /**
+     * Expected line of the last completed depth as Move codes, starting with
+     * the move to play and alternating sides. It ends early where the line
+     * was cut by a table hit.
+     */
+    public int[] getPrincipalVariation() {
+        return principalVariation.clone();
+    }
+
+    public long getNodeCount() {
+        return sharedNodes.get();
+    }
+
+    /**
+     * Collects SearchStats for every search from now on. Switched off, each
+     * counter costs a null check.
+     */
+    public void setCollectingStats(boolean collecting) {
+        stats = collecting ? new SearchStats() : null;
+    }
+
+    // Statistics of the last search, or null when not collecting; reused by the next search
+    public SearchStats getLastStats() {
+        return stats;
+    }
+
+    // Forgets what earlier searches stored, so the next one starts cold
+    public void clearTable() {
+        if (table != null) {
+            table.clear();
+        }
+    }
+
+    /**
+     * Stops a running search from another thread, even in its first iteration.
+     * The interrupted search returns NO_MOVE or a move from a finished depth.
+     */
+    public void cancel() {
+        cancelled = true;
+        if (solver != null) {
+            solver.cancel();
+        }
+    }
+
+    /**
+     * Cancels any search and stops the threads of the parallel search. The
+     * engine stays usable; a later parallel search starts new ones.
+     */
+    public void close() {
+        cancel();
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Clears an earlier cancel. A search does not clear it itself, so a
+     * cancel sent after the search was handed to another thread but before
+     * it started still stops it; call this before handing it over.
+     */
+    public void resetCancel() {
+        cancelled = false;
+        if (solver != null) {
+            solver.resetCancel();
+        }
+    }
+
+    // True if the last search was stopped by cancel rather than by its limits
+    public boolean wasCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Searches the position for the side this engine plays and returns the
+     * chosen cell index, or NO_MOVE if the board is full.
+     */
+    public int search(GameBoard board) {
+        return search(board, 0);
+    }
+
+    /**
+     * Same, with the power-ups both sides still hold as an inventory mask
+     * (see Move). The result is a Move code and may be a power-up.
+     */
+    public int search(GameBoard board, int inventory) {
+        if (table == null) {
+            table = new TranspositionTable(TABLE_SIZE_BITS);
+        }
+        table.nextGeneration();
+        orderer.newSearch();
+        exactDraft = threads > 1;
+        if (threads > 1) {
+            startWorkers();
+        }
+
+        GameBoard search = board.copy();
+        // Power-ups are only played near the root: each is one more ply, and a
+        // bomb empties at most nine cells to be filled again
+        int powerUps = Math.min(POWER_UP_PLIES, Integer.bitCount(inventory));
+        int bombs = Math.min(POWER_UP_PLIES, Integer.bitCount(inventory & BOMBS));
+        int plies = search.countEmpty() + powerUps + 9 * bombs;
+        int depthLimit = Math.min(maxDepth > 0 ? Math.min(maxDepth, plies) : plies, TranspositionTable.MAX_DEPTH);
+
+        nodes = 0;
+        sharedNodes.set(0);
+        stopped = false;
+        aborted = false;
+        completedDepth = 0;
+        principalVariation = new int[0];
+        if (stats != null) {
+            stats.reset();
+        }
+        long start = System.nanoTime();
+        deadline = timeBudgetMillis > 0 ? start + timeBudgetMillis * 1_000_000L : Long.MAX_VALUE;
+
+        // A fixed depth is an explicit request for a depth-limited search
+        if (inventory == 0 && maxDepth == 0 && search.countEmpty() <= endgameEmpty) {
+            int move = solveEndgame(search, start);
+            if (move != NO_MOVE || cancelled) {
+                finishStats(start);
+                return move;
+            }
+        }
+
+        int bestMove = NO_MOVE;
+        for (int depth = 1; depth <= depthLimit; depth++) {
+            horizonReached = false;
+            int move = threads > 1
+                    ? searchRootParallel(search, depth, bestMove, inventory)
+                    : searchRoot(search, depth, bestMove, inventory);
+            if (aborted) break;
+
+            bestMove = move;
+            completedDepth = depth;
+            principalVariation = completeLine(search, depth, inventory);
+
+            // Nothing left to learn: a win is forced or the tree was searched to the end.
+            // Whether a parallel iteration hit the horizon depends on table timing, so the
+            // parallel search only stops early on forced results to stay deterministic.
+            if (Math.abs(lastScore) >= WIN_THRESHOLD) break;
+            if (threads == 1 && !horizonReached) break;
+            // The next iteration costs several times this one, so do not start it late
+            if (timeBudgetMillis > 0 && System.nanoTime() - start > timeBudgetMillis * 500_000L) break;
+        }
+        sharedNodes.addAndGet(nodes & 1023);
+        finishStats(start);
+        return bestMove;
+    }
+
+    // Adds the workers' counters and the totals of the search to the statistics
+    private void finishStats(long start) {
+        if (stats == null) return;
+        if (threads > 1) {
+            synchronized (workerList) {
+                for (SearchEngine worker : workerList) {
+                    stats.add(worker.stats);
+                }
+            }
+        }
+        stats.addNodes(sharedNodes.get());
+        stats.finishSearch(completedDepth, System.nanoTime() - start);
+    }
+
+    /**
+     * Solves the position with at most half of the budgets, so a failed solve
+     * leaves time for the normal search. Returns NO_MOVE if the solve did not
+     * finish or the position is lost; a lost position is left to the normal
+     * search, which holds out the longest.
+     */
+    private int solveEndgame(GameBoard board, long start) {
+        if (solver == null) {
+            solver = new EndgameSolver();
+        }
+        if (cancelled) return NO_MOVE;
+        int empty = board.countEmpty();
+        long solveDeadline = timeBudgetMillis > 0 ? start + timeBudgetMillis * 500_000L : 0;
+        boolean solved = solver.solve(board, symbol, nodeBudget / 2, solveDeadline);
+        sharedNodes.addAndGet(solver.getNodeCount());
+        if (!solved) {
+            if (!cancelled) {
+                endgameEmpty = empty - 1;
+            }
+            return NO_MOVE;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        boolean cheap = (timeBudgetMillis == 0 || elapsed < timeBudgetMillis * 1_000_000L / 8)
+                && (nodeBudget == 0 || solver.getNodeCount() < nodeBudget / 8);
+        if (cheap) {
+            // One full move earlier next time
+            endgameEmpty = Math.min(Math.max(endgameEmpty, empty + 2), MoveOrderer.MAX_PLY);
+        }
+        if (solver.getValue() == EndgameSolver.LOSS) return NO_MOVE;
+        completedDepth = empty;
+        lastScore = solver.getValue() == EndgameSolver.WIN ? WIN_THRESHOLD : 0;
+        principalVariation = new int[]{solver.getBestMove()};
+        return solver.getBestMove();
+    }
+
+    /**
+     * One iteration: an aspiration window around the previous score, widened
+     * on the failing side until the score falls inside it.
+     */
+    private int searchRoot(GameBoard board, int depth, int previousBest, int inventory) {
+        int window = ASPIRATION_WINDOW;
+        boolean aspire = depth > 1 && Math.abs(lastScore) < WIN_THRESHOLD;
+        int alpha = aspire ? lastScore - window : -INFINITE;
+        int beta = aspire ? lastScore + window : INFINITE;
+        while (true) {
+            int move = searchRootWindow(board, depth, previousBest, inventory, alpha, beta);
+            if (aborted) return NO_MOVE;
+            if (lastScore <= alpha && alpha > -INFINITE) {
+                window *= 4;
+                alpha = window > WIN_SCORE ? -INFINITE : lastScore - window;
+            } else if (lastScore >= beta && beta < INFINITE) {
+                window *= 4;
+                beta = window > WIN_SCORE ? INFINITE : lastScore + window;
+                previousBest = move;
+            } else {
+                storeEntry(board, true, inventory, toTable(lastScore, 0), depth, TranspositionTable.EXACT, move);
+                return move;
+            }
+        }
+    }
+
+    private int searchRootWindow(GameBoard board, int depth, int previousBest, int inventory, int alpha, int beta) {
+        int bestMove = NO_MOVE;
+        int bestScore = -INFINITE;
+        pvLength[0] = 0;
+
+        // The previous iteration's best move is searched first; placements that
+        // are mirror images of another under the position's symmetries are skipped
+        int count = generateMoves(board, Symmetry.uniqueMoves(board), 0, previousBest, true, inventory);
+        for (int i = 0; i < count; i++) {
+            int move = orderer.next(0, i, count);
+            int child = spend(inventory, move, true);
+            play(board, move, symbol, 0);
+            int score;
+            if (i == 0) {
+                score = -negamax(board, move, 1, false, -beta, -alpha, depth, child);
+            } else {
+                score = -negamax(board, move, 1, false, -alpha - 1, -alpha, depth, child);
+                if (score > alpha && score < beta && !aborted) {
+                    score = -negamax(board, move, 1, false, -beta, -alpha, depth, child);
+                }
+            }
+            undo(board, move, 0);
+            if (aborted) return NO_MOVE;
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(0, move);
+                }
+            }
+            if (alpha >= beta) break;
+        }
+        if (pvLength[0] == 0 && bestMove != NO_MOVE) {
+            // Failed low: still report the move that is played
+            pv[0][0] = bestMove;
+            pvLength[0] = 1;
+        }
+        lastScore = bestScore;
+        return bestMove;
+    }
+
+    private int searchRootParallel(GameBoard board, int depth, int previousBest, int inventory) {
+        int count = generateMoves(board, Symmetry.uniqueMoves(board), 0, previousBest, true, inventory);
+        int[] rootMoves = new int[count];
+        for (int i = 0; i < count; i++) {
+            rootMoves[i] = orderer.next(0, i, count);
+        }
+        int[] scores = new int[count];
+
+        // Eldest brother first, with a full window
+        int[][] lines = new int[count][];
+        pvLength[0] = 0;
+        play(board, rootMoves[0], symbol, 0);
+        scores[0] = -negamax(board, rootMoves[0], 1, false, -INFINITE, INFINITE, depth,
+                spend(inventory, rootMoves[0], true));
+        undo(board, rootMoves[0], 0);
+        if (aborted) return NO_MOVE;
+        lines[0] = java.util.Arrays.copyOfRange(pv[1], 1, pvLength[1]);
+
+        sharedAlpha = new AtomicInteger(scores[0]);
+        sharedHorizon = false;
+        RootMoveTask[] tasks = new RootMoveTask[count - 1];
+        for (int i = 1; i < count; i++) {
+            tasks[i - 1] = new RootMoveTask(board.copy(), rootMoves, scores, lines, i, depth, inventory);
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        if (stopped) {
+            aborted = true;
+            return NO_MOVE;
+        }
+        horizonReached |= sharedHorizon;
+
+        // Highest score wins, ties go to the earlier move in the ordering
+        int best = 0;
+        for (int i = 1; i < count; i++) {
+            if (scores[i] > scores[best]) best = i;
+        }
+        lastScore = scores[best];
+        pv[0][0] = rootMoves[best];
+        System.arraycopy(lines[best], 0, pv[0], 1, lines[best].length);
+        pvLength[0] = lines[best].length + 1;
+        storeEntry(board, true, inventory, toTable(lastScore, 0), depth, TranspositionTable.EXACT, rootMoves[best]);
+        return rootMoves[best];
+    }
+
+    // Runs on a pool thread: searches one root move against the shared alpha bound
+    private int searchRootMove(GameBoard board, int move, int depth, int inventory) {
+        nodes = 0;
+        aborted = false;
+        horizonReached = false;
+        play(board, move, symbol, 0);
+        int score = -negamax(board, move, 1, false, -INFINITE, -belowAlpha(parent.sharedAlpha.get()), depth,
+                spend(inventory, move, true));
+        undo(board, move, 0);
+        parent.sharedNodes.addAndGet(nodes & 1023);
+        if (horizonReached) {
+            parent.sharedHorizon = true;
+        }
+        if (!aborted) {
+            parent.sharedAlpha.accumulateAndGet(score, Math::max);
+        }
+        return score;
+    }
+
+    // One below the bound, so moves that tie the best get exact scores too
+    private static int belowAlpha(int alpha) {
+        return alpha - 1;
+    }
+
+    private void startWorkers() {
+        if (pool == null || pool.isShutdown() || pool.getParallelism() != threads) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            pool = new ForkJoinPool(threads);
+            synchronized (workerList) {
+                workerList.clear();
+            }
+            workers = ThreadLocal.withInitial(() -> {
+                SearchEngine worker = new SearchEngine(this);
+                synchronized (workerList) {
+                    workerList.add(worker);
+                }
+                return worker;
+            });
+        }
+        synchronized (workerList) {
+            for (SearchEngine worker : workerList) {
+                worker.table = table;
+                worker.orderer.newSearch();
+                worker.stats = stats != null ? new SearchStats() : null;
+            }
+        }
+    }
+
+    private class RootMoveTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final GameBoard board;
+        private final int[] rootMoves;
+        private final int[] scores;
+        private final int[][] lines;
+        private final int index;
+        private final int depth;
+        private final int inventory;
+
+        RootMoveTask(GameBoard board, int[] rootMoves, int[] scores, int[][] lines, int index, int depth,
+                     int inventory) {
+            this.board = board;
+            this.rootMoves = rootMoves;
+            this.scores = scores;
+            this.lines = lines;
+            this.index = index;
+            this.depth = depth;
+            this.inventory = inventory;
+        }
+
+        @Override
+        protected void compute() {
+            SearchEngine worker = workers.get();
+            scores[index] = worker.searchRootMove(board, rootMoves[index], depth, inventory);
+            lines[index] = java.util.Arrays.copyOfRange(worker.pv[1], 1, worker.pvLength[1]);
+        }
+    }
+
+    /**
+     * Score of the position for the side to move (the engine when own is
+     * true), fail-soft within the window alpha..beta.
+     */
+    private int negamax(GameBoard board, int lastMove, int ply, boolean own,
+                        int alpha, int beta, int depth, int inventory) {
+        nodes++;
+        pvLength[ply] = ply;
+        if (stats != null) {
+            stats.visit(ply);
+        }
+        if (shouldAbort()) {
+            aborted = true;
+            return 0;
+        }
+
+        int size = board.getSize();
+        char mover = own ? symbol : opponentSymbol;
+
+        // Only the previous move can have completed a line: a placement or a
+        // swap on its cell (bombs and shields never complete one)
+        int lastCell = Move.cell(lastMove);
+        char winner = board.checkWinnerAt(lastCell / size, lastCell % size).getWinner();
+
+        if (winner != ' ') {
+            return winner == mover ? WIN_SCORE - ply : ply - WIN_SCORE;
+        } else if (board.isFull()) {
+            return evaluateBoard(board, own);
+        } else if (board.isDead() && (inventory & REOPENERS) == 0) {
+            // No line can be completed any more: a certain draw
+            return 0;
+        } else if (ply >= depth) {
+            horizonReached = true;
+            return evaluateBoard(board, own);
+        }
+
+        // Transposition lookup: the same position can be reached in several move orders
+        // Symmetric positions share an entry: the key is the smallest of the 8
+        // symmetry hashes and the best move is stored as seen through that symmetry
+        int transform = board.getCanonicalTransform();
+        long key = board.getSymmetryHash(transform) ^ (own ? GameBoard.SIDE_TO_MOVE_KEY : 0)
+                ^ INVENTORY_KEYS[inventory];
+        int draft = depth - ply;
+        long entry = table.probe(key);
+        if (stats != null) {
+            stats.probe(entry != 0);
+        }
+        int hashMove = NO_MOVE;
+        if (entry != 0) {
+            hashMove = fromCanonical(TranspositionTable.bestMoveOf(entry), board, transform);
+            int entryDraft = TranspositionTable.depthOf(entry);
+            if (exactDraft ? entryDraft == draft : entryDraft >= draft) {
+                int stored = fromTable(TranspositionTable.scoreOf(entry), ply);
+                int flag = TranspositionTable.flagOf(entry);
+                if (flag == TranspositionTable.LOWER) {
+                    alpha = Math.max(alpha, stored);
+                } else if (flag == TranspositionTable.UPPER) {
+                    beta = Math.min(beta, stored);
+                }
+                if (flag == TranspositionTable.EXACT || beta <= alpha) {
+                    // The cut stands in for the subtree, horizon included
+                    if (TranspositionTable.horizonOf(entry)) {
+                        horizonReached = true;
+                    }
+                    return stored;
+                }
+            }
+        }
+
+        int alphaOrig = alpha;
+        int bestMove = NO_MOVE;
+        int bestEval = -INFINITE;
+        // Tracks the horizon of this subtree alone, for its table entry
+        boolean outerHorizon = horizonReached;
+        horizonReached = false;
+        int count = generateMoves(board, board.getEmptyBits(), ply, hashMove, own, inventory);
+        for (int i = 0; i < count; i++) {
+            // Root moves finished by other threads may have raised the root's alpha
+            if (parent != null && ply == 1) {
+                beta = Math.min(beta, -belowAlpha(parent.sharedAlpha.get()));
+                if (beta <= alpha) break;
+            }
+            int move = orderer.next(ply, i, count);
+            int child = spend(inventory, move, own);
+            play(board, move, mover, ply);
+            int eval;
+            if (i == 0) {
+                eval = -negamax(board, move, ply + 1, !own, -beta, -alpha, depth, child);
+            } else {
+                // Later moves only have to be shown no better than the best so far
+                eval = -negamax(board, move, ply + 1, !own, -alpha - 1, -alpha, depth, child);
+                if (eval > alpha && eval < beta && !aborted) {
+                    eval = -negamax(board, move, ply + 1, !own, -beta, -alpha, depth, child);
+                }
+            }
+            undo(board, move, ply);
+            if (aborted) return 0;
+            if (eval > bestEval) {
+                bestEval = eval;
+                bestMove = move;
+                if (eval > alpha) {
+                    alpha = eval;
+                    updatePv(ply, move);
+                }
+            }
+            if (alpha >= beta) {
+                if (stats != null) {
+                    stats.cutoff(i);
+                }
+                orderer.onCutoff(ply, move, own, draft);
+                break;
+            }
+        }
+
+        int flag = bestEval <= alphaOrig ? TranspositionTable.UPPER
+                : bestEval >= beta ? TranspositionTable.LOWER
+                : TranspositionTable.EXACT;
+        table.store(key, toTable(bestEval, ply), draft, flag, toCanonical(bestMove, board, transform),
+                horizonReached);
+        horizonReached |= outerHorizon;
+        return bestEval;
+    }
+
+    /**
+     * The root's principal variation, continued with the table's best
+     * placements where a table hit cut it short.
+     */
+    private int[] completeLine(GameBoard board, int depth, int inventory) {
+        int[] line = java.util.Arrays.copyOf(pv[0], depth);
+        int length = pvLength[0];
+        int played = 0;
+        boolean own = true;
+        while (played < depth) {
+            if (played >= length) {
+                int transform = board.getCanonicalTransform();
+                long entry = table.probe(board.getSymmetryHash(transform)
+                        ^ (own ? GameBoard.SIDE_TO_MOVE_KEY : 0) ^ INVENTORY_KEYS[inventory]);
+                int move = entry == 0 ? NO_MOVE
+                        : fromCanonical(TranspositionTable.bestMoveOf(entry), board, transform);
+                if (move < 0 || Move.kind(move) != Move.PLACE || (board.getEmptyBits() & (1L << move)) == 0) break;
+                line[length++] = move;
+            }
+            int move = line[played];
+            play(board, move, own ? symbol : opponentSymbol, played);
+            inventory = spend(inventory, move, own);
+            own = !own;
+            played++;
+            int cell = Move.cell(move);
+            if (board.checkWinnerAt(cell / board.getSize(), cell % board.getSize()).hasWinner()
+                    || board.isFull()) {
+                break;
+            }
+        }
+        for (int ply = played - 1; ply >= 0; ply--) {
+            undo(board, line[ply], ply);
+        }
+        return java.util.Arrays.copyOf(line, played);
+    }
+
+    // The move followed by the child's line becomes the line from this ply
+    private void updatePv(int ply, int move) {
+        pv[ply][ply] = move;
+        System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+        pvLength[ply] = pvLength[ply + 1];
+    }
+
+    private int generateMoves(GameBoard board, long candidates, int ply, int hashMove, boolean own, int inventory) {
+        int count = orderer.generate(board, candidates, ply, hashMove, own);
+        if (ply < POWER_UP_PLIES && inventory != 0) {
+            count = addPowerUps(board, ply, count, hashMove, own, inventory);
+        }
+        return count;
+    }
+
+    /**
+     * Adds the power-up moves of the side to move, each on its best few
+     * targets: bombs and swaps that break up the opponent's live lines, and
+     * shields on own cells in live lines while the opponent can still attack.
+     */
+    private int addPowerUps(GameBoard board, int ply, int count, int hashMove, boolean own, int inventory) {
+        char mover = own ? symbol : opponentSymbol;
+        long mine = board.getBits(mover);
+        long theirs = board.getBits(mover == 'X' ? 'O' : 'X');
+        long shields = board.getShieldBits();
+        int cells = board.getSize() * board.getSize();
+        WinLines lines = WinLines.forBoard(board.getSize(), board.getWinCondition());
+
+        if ((inventory & Move.inventoryBit(Move.BOMB, own)) != 0) {
+            int picked = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                long area = board.bombArea(cell);
+                int gain = 0;
+                for (long bits = theirs & area; bits != 0; bits &= bits - 1) {
+                    gain += lineWeight(theirs, mine, Long.numberOfTrailingZeros(bits), lines);
+                }
+                for (long bits = mine & area; bits != 0; bits &= bits - 1) {
+                    gain -= lineWeight(mine, theirs, Long.numberOfTrailingZeros(bits), lines);
+                }
+                if (gain > 0) {
+                    picked = pickTarget(picked, BOMB_TARGETS, Move.of(Move.BOMB, cell), gain);
+                }
+            }
+            count = addTargets(ply, count, picked, hashMove, own);
+        }
+
+        if ((inventory & Move.inventoryBit(Move.SWAP, own)) != 0) {
+            int picked = 0;
+            for (long bits = theirs & ~shields; bits != 0; bits &= bits - 1) {
+                int cell = Long.numberOfTrailingZeros(bits);
+                int gain = lineWeight(theirs, mine, cell, lines)
+                        + lineWeight(mine | (1L << cell), theirs & ~(1L << cell), cell, lines);
+                if (gain > 0) {
+                    picked = pickTarget(picked, SWAP_TARGETS, Move.of(Move.SWAP, cell), gain);
+                }
+            }
+            count = addTargets(ply, count, picked, hashMove, own);
+        }
+
+        int attacks = Move.inventoryBit(Move.BOMB, !own) | Move.inventoryBit(Move.SWAP, !own);
+        if ((inventory & Move.inventoryBit(Move.SHIELD, own)) != 0 && (inventory & attacks) != 0) {
+            int picked = 0;
+            for (long bits = mine & ~shields; bits != 0; bits &= bits - 1) {
+                int cell = Long.numberOfTrailingZeros(bits);
+                int gain = lineWeight(mine, theirs, cell, lines);
+                if (gain > 0) {
+                    picked = pickTarget(picked, SHIELD_TARGETS, Move.of(Move.SHIELD, cell), gain);
+                }
+            }
+            count = addTargets(ply, count, picked, hashMove, own);
+        }
+        return count;
+    }
+
+    // Partners the cell has in lines through it that the other side has not blocked
+    private static int lineWeight(long bits, long blockers, int cell, WinLines lines) {
+        int weight = 0;
+        for (int line : lines.getLinesThrough(cell)) {
+            long mask = lines.getMask(line);
+            if ((blockers & mask) == 0) {
+                weight += Long.bitCount(bits & mask) - 1;
+            }
+        }
+        return weight;
+    }
+
+    // Keeps the best targets in a small buffer sorted by descending gain
+    private int pickTarget(int picked, int limit, int move, int gain) {
+        int i = Math.min(picked, limit - 1);
+        if (picked == limit && gain <= targetScores[i]) return picked;
+        while (i > 0 && targetScores[i - 1] < gain) {
+            targetMoves[i] = targetMoves[i - 1];
+            targetScores[i] = targetScores[i - 1];
+            i--;
+        }
+        targetMoves[i] = move;
+        targetScores[i] = gain;
+        return Math.min(picked + 1, limit);
+    }
+
+    private int addTargets(int ply, int count, int picked, int hashMove, boolean own) {
+        for (int i = 0; i < picked; i++) {
+            count = orderer.add(ply, count, targetMoves[i], hashMove, own, targetScores[i]);
+        }
+        return count;
+    }
+
+    private void play(GameBoard board, int move, char side, int ply) {
+        int cell = Move.cell(move);
+        switch (Move.kind(move)) {
+            case Move.BOMB:
+                long area = board.bombArea(cell);
+                bombX[ply] = board.getXBits() & area;
+                bombO[ply] = board.getOBits() & area;
+                board.clearCells(area);
+                break;
+            case Move.SHIELD:
+                board.toggleShield(cell);
+                break;
+            case Move.SWAP:
+                board.swapCell(cell);
+                break;
+            default:
+                board.makeMove(cell, side);
+        }
+    }
+
+    private void undo(GameBoard board, int move, int ply) {
+        int cell = Move.cell(move);
+        switch (Move.kind(move)) {
+            case Move.BOMB:
+                board.restoreCells(bombX[ply], bombO[ply]);
+                break;
+            case Move.SHIELD:
+                board.toggleShield(cell);
+                break;
+            case Move.SWAP:
+                board.swapCell(cell);
+                break;
+            default:
+                board.undoMove(cell);
+        }
+    }
+
+    private static int spend(int inventory, int move, boolean own) {
+        int kind = Move.kind(move);
+        return kind == Move.PLACE ? inventory : inventory & ~Move.inventoryBit(kind, own);
+    }
+
+    /**
+     * The opponent's expected reply in a position where it is to move, taken
+     * from the transposition table, or NO_MOVE if the position is not stored
+     * or the stored reply is not a placement.
+     */
+    public int predictReply(GameBoard board, int inventory) {
+        if (table == null) return NO_MOVE;
+        int transform = board.getCanonicalTransform();
+        long entry = table.probe(board.getSymmetryHash(transform) ^ INVENTORY_KEYS[inventory]);
+        if (entry == 0) return NO_MOVE;
+        int move = fromCanonical(TranspositionTable.bestMoveOf(entry), board, transform);
+        return move >= 0 && Move.kind(move) == Move.PLACE && (board.getEmptyBits() & (1L << move)) != 0
+                ? move : NO_MOVE;
+    }
+
+    private void storeEntry(GameBoard board, boolean own, int inventory, int score, int draft, int flag,
+                            int bestMove) {
+        int transform = board.getCanonicalTransform();
+        long key = board.getSymmetryHash(transform) ^ (own ? GameBoard.SIDE_TO_MOVE_KEY : 0)
+                ^ INVENTORY_KEYS[inventory];
+        table.store(key, score, draft, flag, toCanonical(bestMove, board, transform), horizonReached);
+    }
+
+    // Symmetries map a bomb's area onto the area around the mapped cell, so
+    // power-up moves transform like placements. The board's own arrays are
+    // used because Symmetry's lookups lock, which would serialize the workers.
+    private static int toCanonical(int move, GameBoard board, int transform) {
+        return move < 0 ? move : Move.of(Move.kind(move), board.getSymmetries()[transform][Move.cell(move)]);
+    }
+
+    private static int fromCanonical(int move, GameBoard board, int transform) {
+        return move < 0 ? move : Move.of(Move.kind(move), board.getInverseSymmetries()[transform][Move.cell(move)]);
+    }
+
+    // Limits are checked every 1024 nodes; the first iteration always
+    // finishes so there is a move to play
+    private boolean shouldAbort() {
+        if ((nodes & 1023) != 0) return false;
+        SearchEngine root = parent != null ? parent : this;
+        long total = root.sharedNodes.addAndGet(1024);
+        if (root.cancelled) {
+            root.stopped = true;
+            return true;
+        }
+        if (root.completedDepth == 0) return false;
+        if (root.stopped
+                || (root.nodeBudget > 0 && total > root.nodeBudget)
+                || System.nanoTime() > root.deadline) {
+            root.stopped = true;
+            return true;
+        }
+        return false;
+    }
+
+    // Open lines weighted by how full they are, maintained by the board itself,
+    // for the side to move
+    private int evaluateBoard(GameBoard board, boolean own) {
+        if (stats != null) {
+            stats.leaf();
+        }
+        // Tuned pattern weights are unbounded; keep their sum below the win scores
+        int score = Math.max(-MAX_EVAL, Math.min(MAX_EVAL, board.getThreatScore()));
+        return (symbol == 'X') == own ? score : -score;
+    }
+
+    // Win scores depend on the distance from the root, so the table stores them
+    // relative to the node and converts back when they are read at another ply
+    private static int toTable(int score, int ply) {
+        if (score >= WIN_THRESHOLD) return score + ply;
+        if (score <= -WIN_THRESHOLD) return score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= WIN_THRESHOLD) return score - ply;
+        if (score <= -WIN_THRESHOLD) return score + ply;
+        return score;
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * SearchStats - What a search did: nodes, evaluations, cutoffs, depth, time
+ * Filled by SearchEngine while collecting is switched on, and summed over
+ * the searches of one move (threat search, alpha-beta or MCTS) and over a
+ * whole session by AIPlayer. For MCTS the nodes are tree nodes and the leaf
+ * evaluations its playouts.
+ *
+ * Beta cutoffs are counted by the index of the move that caused them in the
+ * ordered move list, the last slot holding every index from there on: good
+ * move ordering puts nearly all of them in slot 0.
+ */
+public class SearchStats {
+    public static final int CUTOFF_SLOTS = 8;
+
+    private long searches;
+    private long nodes;
+    private long leafEvaluations;
+    private final long[] cutoffs = new long[CUTOFF_SLOTS];
+    private int depth;
+    private int maxPly;
+    private long elapsedNanos;
+    private long tableProbes;
+    private long tableHits;
+
+    // Searches summed up here
+    public long getSearches() {
+        return searches;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    // Positions scored by the evaluation at the horizon or on a full board
+    public long getLeafEvaluations() {
+        return leafEvaluations;
+    }
+
+    // Beta cutoffs caused by the move at the given index (the last slot: at or after it)
+    public long getCutoffs(int index) {
+        return cutoffs[Math.min(index, CUTOFF_SLOTS - 1)];
+    }
+
+    public long getTotalCutoffs() {
+        long total = 0;
+        for (long count : cutoffs) total += count;
+        return total;
+    }
+
+    // Share of the cutoffs caused by the first move tried, 0 without cutoffs
+    public double getFirstMoveCutoffRate() {
+        long total = getTotalCutoffs();
+        return total == 0 ? 0 : (double) cutoffs[0] / total;
+    }
+
+    // Deepest completed iteration
+    public int getDepth() {
+        return depth;
+    }
+
+    // Deepest ply a node was visited at
+    public int getMaxPly() {
+        return maxPly;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1e9 / elapsedNanos;
+    }
+
+    public long getTableProbes() {
+        return tableProbes;
+    }
+
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    // Share of the transposition table probes that found an entry, 0 without probes
+    public double getTableHitRate() {
+        return tableProbes == 0 ? 0 : (double) tableHits / tableProbes;
+    }
+
+    public void reset() {
+        searches = 0;
+        nodes = 0;
+        leafEvaluations = 0;
+        java.util.Arrays.fill(cutoffs, 0);
+        depth = 0;
+        maxPly = 0;
+        elapsedNanos = 0;
+        tableProbes = 0;
+        tableHits = 0;
+    }
+
+    // Counts are summed; depths are the deepest of both
+    public void add(SearchStats other) {
+        searches += other.searches;
+        nodes += other.nodes;
+        leafEvaluations += other.leafEvaluations;
+        for (int i = 0; i < CUTOFF_SLOTS; i++) {
+            cutoffs[i] += other.cutoffs[i];
+        }
+        depth = Math.max(depth, other.depth);
+        maxPly = Math.max(maxPly, other.maxPly);
+        elapsedNanos += other.elapsedNanos;
+        tableProbes += other.tableProbes;
+        tableHits += other.tableHits;
+    }
+
+    public SearchStats copy() {
+        SearchStats copy = new SearchStats();
+        copy.add(this);
+        return copy;
+    }
+
+    // Counters for the engines
+
+    void visit(int ply) {
+        if (ply > maxPly) maxPly = ply;
+    }
+
+    void leaf() {
+        leafEvaluations++;
+    }
+
+    void cutoff(int index) {
+        cutoffs[Math.min(index, CUTOFF_SLOTS - 1)]++;
+    }
+
+    void probe(boolean hit) {
+        tableProbes++;
+        if (hit) tableHits++;
+    }
+
+    void addNodes(long count) {
+        nodes += count;
+    }
+
+    void addLeaves(long count) {
+        leafEvaluations += count;
+    }
+
+    void finishSearch(int completedDepth, long nanos) {
+        searches++;
+        depth = Math.max(depth, completedDepth);
+        elapsedNanos += nanos;
+    }
+
+    void setElapsedNanos(long nanos) {
+        elapsedNanos = nanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d nodes, %d evals, depth %d (max ply %d), %.1f ms, %.0f nodes/s",
+                nodes, leafEvaluations, depth, maxPly, elapsedNanos / 1e6, getNodesPerSecond()));
+        sb.append(String.format(", table hits %.1f%%, cutoffs %d (", 100 * getTableHitRate(), getTotalCutoffs()));
+        for (int i = 0; i < CUTOFF_SLOTS; i++) {
+            sb.append(i == 0 ? "" : " ").append(cutoffs[i]);
+        }
+        return sb.append(" by move index)").toString();
+    }
+}
@@ -0,0 +1,87 @@
+import java.lang.reflect.Constructor;
+
+/**
+ * SelfPlayRunner - Plays many games between two players without a display
+ * Every game is a GameSession, so the rules are exactly those of the GUI;
+ * the same two Player objects play all games, so scores and streaks add up.
+ *
+ * Usage: java SelfPlayRunner [games] [size] [classic|upnormal] [player1] [player2] [millis]
+ * A player is easy, medium or hard (an AIPlayer), or the class name of a
+ * Player with a (String name, char symbol) constructor. player1 plays X and
+ * moves first; millis is the Hard AI's time per move. The search statistics
+ * of each AI over all games are printed at the end.
+ * Defaults: 100 games, 3x3, classic, hard vs hard, 50 ms.
+ */
+public class SelfPlayRunner {
+
+    public static void main(String[] args) throws ReflectiveOperationException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        boolean classic = args.length <= 2 || !args[2].equalsIgnoreCase("upnormal");
+        String spec1 = args.length > 3 ? args[3] : "hard";
+        String spec2 = args.length > 4 ? args[4] : "hard";
+        long millis = args.length > 5 ? Long.parseLong(args[5]) : 50;
+
+        Player player1 = createPlayer(spec1, "Player 1", 'X', millis);
+        Player player2 = createPlayer(spec2, "Player 2", 'O', millis);
+        if (player1 instanceof AIPlayer) {
+            ((AIPlayer) player1).setOpponent(player2);
+            ((AIPlayer) player1).setCollectingStats(true);
+        }
+        if (player2 instanceof AIPlayer) {
+            ((AIPlayer) player2).setOpponent(player1);
+            ((AIPlayer) player2).setCollectingStats(true);
+        }
+
+        int xWins = 0;
+        int oWins = 0;
+        int draws = 0;
+        long moves = 0;
+        long start = System.nanoTime();
+        for (int game = 0; game < games; game++) {
+            GameSession session = new GameSession(size, player1, player2, classic);
+            while (!session.isOver()) {
+                if (!session.playTurn()) {
+                    throw new IllegalStateException(session.getCurrentPlayer().getName()
+                            + " did not play a legal move in game " + (game + 1));
+                }
+            }
+            moves += session.getMoveCount();
+            if (session.getOutcome() == GameSession.Outcome.DRAW) {
+                draws++;
+            } else if (session.getWinner() == player1) {
+                xWins++;
+            } else {
+                oWins++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d games on %dx%d (%s): %s vs %s%n", games, size, size,
+                classic ? "Classic" : "Upnormal", spec1, spec2);
+        System.out.printf("X wins %d, O wins %d, draws %d; scores %d - %d%n",
+                xWins, oWins, draws, player1.getScore(), player2.getScore());
+        System.out.printf("%.2f s, %.1f games/s, %.0f moves/s%n",
+                seconds, games / seconds, moves / seconds);
+        for (Player player : new Player[]{player1, player2}) {
+            if (player instanceof AIPlayer) {
+                System.out.println(player.getName() + ": " + ((AIPlayer) player).getSessionStats());
+            }
+        }
+    }
+
+    static Player createPlayer(String spec, String name, char symbol, long millis)
+            throws ReflectiveOperationException {
+        char opponent = symbol == 'X' ? 'O' : 'X';
+        for (AIPlayer.Difficulty difficulty : AIPlayer.Difficulty.values()) {
+            if (difficulty.name().equalsIgnoreCase(spec)) {
+                AIPlayer ai = new AIPlayer(name, symbol, opponent, difficulty);
+                ai.setTimeBudget(millis);
+                return ai;
+            }
+        }
+        Constructor<? extends Player> constructor = Class.forName(spec)
+                .asSubclass(Player.class).getConstructor(String.class, char.class);
+        return constructor.newInstance(name, symbol);
+    }
+}
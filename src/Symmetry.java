@@ -0,0 +1,110 @@
+/**
+ * Symmetry - The 8 symmetries of a square board (dihedral group D4)
+ * Each symmetry is a cell permutation: index 0 is the identity, 1-3 the
+ * rotations by 90, 180 and 270 degrees, 4-7 the four reflections.
+ */
+public final class Symmetry {
+    public static final int COUNT = 8;
+
+    private static final int[][][] PERMUTATIONS = new int[9][][];
+    private static final int[][][] INVERSES = new int[9][][];
+
+    private Symmetry() {
+    }
+
+    /**
+     * permutations(size)[t][cell] is where symmetry t moves the cell
+     */
+    public static synchronized int[][] permutations(int size) {
+        if (PERMUTATIONS[size] == null) {
+            build(size);
+        }
+        return PERMUTATIONS[size];
+    }
+
+    public static synchronized int[][] inverses(int size) {
+        if (INVERSES[size] == null) {
+            build(size);
+        }
+        return INVERSES[size];
+    }
+
+    private static void build(int size) {
+        int cells = size * size;
+        int last = size - 1;
+        int[][] perms = new int[COUNT][cells];
+        int[][] inverse = new int[COUNT][cells];
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                int cell = r * size + c;
+                perms[0][cell] = r * size + c;
+                perms[1][cell] = c * size + (last - r);
+                perms[2][cell] = (last - r) * size + (last - c);
+                perms[3][cell] = (last - c) * size + r;
+                perms[4][cell] = r * size + (last - c);
+                perms[5][cell] = (last - r) * size + c;
+                perms[6][cell] = c * size + r;
+                perms[7][cell] = (last - c) * size + (last - r);
+            }
+        }
+        for (int t = 0; t < COUNT; t++) {
+            for (int cell = 0; cell < cells; cell++) {
+                inverse[t][perms[t][cell]] = cell;
+            }
+        }
+        PERMUTATIONS[size] = perms;
+        INVERSES[size] = inverse;
+    }
+
+    public static long transform(long bits, int[] perm) {
+        long result = 0;
+        for (; bits != 0; bits &= bits - 1) {
+            result |= 1L << perm[Long.numberOfTrailingZeros(bits)];
+        }
+        return result;
+    }
+
+    /**
+     * Bit mask of the symmetries that map the position (symbols and shields)
+     * onto itself. Bit 0, the identity, is always set.
+     */
+    public static int stabilizer(GameBoard board) {
+        int[][] perms = board.getSymmetries();
+        long x = board.getXBits();
+        long o = board.getOBits();
+        long shields = board.getShieldBits();
+        int mask = 1;
+        for (int t = 1; t < COUNT; t++) {
+            if (transform(x, perms[t]) == x && transform(o, perms[t]) == o
+                    && transform(shields, perms[t]) == shields) {
+                mask |= 1 << t;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Empty cells with one representative per class of moves that lead to
+     * symmetric positions: a cell is kept if no symmetry of the position maps
+     * it to a lower index.
+     */
+    public static long uniqueMoves(GameBoard board) {
+        long empty = board.getEmptyBits();
+        int stabilizer = stabilizer(board);
+        if (stabilizer == 1) return empty;
+
+        int[][] perms = board.getSymmetries();
+        long unique = 0;
+        for (long bits = empty; bits != 0; bits &= bits - 1) {
+            int cell = Long.numberOfTrailingZeros(bits);
+            boolean representative = true;
+            for (int t = 1; t < COUNT && representative; t++) {
+                if ((stabilizer & (1 << t)) != 0 && perms[t][cell] < cell) {
+                    representative = false;
+                }
+            }
+            if (representative) unique |= 1L << cell;
+        }
+        return unique;
+    }
+}
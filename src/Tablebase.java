@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tablebase - Perfect-play table for the 3x3 and 4x4 boards
+ * Positions are keyed by their canonical base-3 index: the smallest index
+ * over the 8 board symmetries, cell k being digit 3^k with 0 empty, 1 X,
+ * 2 O. A file holds a header, the sorted keys of all solved positions as
+ * ints, then one byte per key: bits 0-1 the value for the side to move,
+ * bits 2-5 the best move as seen in the canonical orientation. Files are
+ * written by TablebaseGenerator and memory-mapped at startup; a lookup is a
+ * binary search over the mapped keys (about 19 probes on 4x4).
+ */
+public final class Tablebase {
+    public static final String DIRECTORY_PROPERTY = "tictactoe.tablebase";
+    public static final String DEFAULT_DIRECTORY = "tablebase";
+
+    public static final int LOSS = 1;
+    public static final int DRAW = 2;
+    public static final int WIN = 3;
+
+    static final int MAGIC = 0x54544242; // "TTBB"
+    static final int HEADER_BYTES = 16;
+    static final int[] SIZES = {3, 4};
+
+    private static final Tablebase[] LOADED = new Tablebase[9];
+
+    private final int size;
+    private final int winCondition;
+    private final IntBuffer keys;
+    private final MappedByteBuffer entries;
+    private final int[] powers;
+
+    private Tablebase(int size, int winCondition, IntBuffer keys, MappedByteBuffer entries) {
+        this.size = size;
+        this.winCondition = winCondition;
+        this.keys = keys;
+        this.entries = entries;
+        this.powers = powersOfThree(size * size);
+    }
+
+    public static String fileName(int size) {
+        return "tb-" + size + "x" + size + ".bin";
+    }
+
+    /**
+     * Maps every table file found in the directory. Missing files are skipped,
+     * the AI then simply searches those boards.
+     */
+    public static synchronized void loadAll(Path directory) {
+        for (int size : SIZES) {
+            Path file = directory.resolve(fileName(size));
+            if (!Files.isRegularFile(file)) continue;
+            try {
+                LOADED[size] = open(file);
+            } catch (IOException | IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public static void loadDefault() {
+        loadAll(Paths.get(System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY)));
+    }
+
+    public static synchronized Tablebase forBoard(int size) {
+        return LOADED[size];
+    }
+
+    private static Tablebase open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a tablebase file: " + file);
+            }
+            int size = header.getInt();
+            int winCondition = header.getInt();
+            int count = header.getInt();
+            if (channel.size() != HEADER_BYTES + 5L * count) {
+                throw new IllegalArgumentException("Truncated tablebase file: " + file);
+            }
+            // The mappings stay valid after the channel is closed
+            IntBuffer keys = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, 4L * count)
+                    .order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+            MappedByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + 4L * count, count);
+            return new Tablebase(size, winCondition, keys, entries);
+        }
+    }
+
+    /**
+     * Best cell for the given side, or NO_MOVE if it is not that side's turn
+     * (X moves first) or the position is not in the table (shields, a
+     * finished game).
+     */
+    public int bestMove(GameBoard board, char side) {
+        int xCount = Long.bitCount(board.getXBits());
+        int oCount = Long.bitCount(board.getOBits());
+        char toMove = xCount == oCount ? 'X' : xCount == oCount + 1 ? 'O' : ' ';
+        if (side != toMove || board.getSize() != size || board.getWinCondition() != winCondition
+                || board.getShieldBits() != 0) {
+            return SearchEngine.NO_MOVE;
+        }
+        int[][] perms = Symmetry.permutations(size);
+        int best = Integer.MAX_VALUE;
+        int bestTransform = 0;
+        for (int t = 0; t < Symmetry.COUNT; t++) {
+            int index = index(board.getXBits(), board.getOBits(), perms[t], powers);
+            if (index < best) {
+                best = index;
+                bestTransform = t;
+            }
+        }
+        int entry = entry(best);
+        if (entry == 0) return SearchEngine.NO_MOVE;
+        int cell = Symmetry.inverses(size)[bestTransform][(entry >> 2) & 15];
+        return (board.getEmptyBits() & (1L << cell)) != 0 ? cell : SearchEngine.NO_MOVE;
+    }
+
+    private int entry(int key) {
+        int low = 0;
+        int high = keys.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int k = keys.get(mid);
+            if (k < key) {
+                low = mid + 1;
+            } else if (k > key) {
+                high = mid - 1;
+            } else {
+                return entries.get(mid);
+            }
+        }
+        return 0;
+    }
+
+    static int index(long x, long o, int[] perm, int[] powers) {
+        int index = 0;
+        for (long bits = x; bits != 0; bits &= bits - 1) {
+            index += powers[perm[Long.numberOfTrailingZeros(bits)]];
+        }
+        for (long bits = o; bits != 0; bits &= bits - 1) {
+            index += 2 * powers[perm[Long.numberOfTrailingZeros(bits)]];
+        }
+        return index;
+    }
+
+    static int[] powersOfThree(int count) {
+        int[] powers = new int[count];
+        int p = 1;
+        for (int i = 0; i < count; i++) {
+            powers[i] = p;
+            p *= 3;
+        }
+        return powers;
+    }
+}
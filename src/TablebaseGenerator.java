@@ -0,0 +1,205 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * TablebaseGenerator - Offline solver that writes the Tablebase files
+ * Solves every position reachable from the empty board (X first) with a
+ * memoized full search over canonical positions, preferring the fastest
+ * win and the slowest loss.
+ *
+ * Usage: java TablebaseGenerator [directory] [size...]   (default: tablebase 3 4)
+ */
+public class TablebaseGenerator {
+    private final int size;
+    private final int winCondition;
+    private final long full;
+    private final WinLines lines;
+    private final int[][] perms;
+    private final int[] powers;
+    private final int[] order;
+
+    // Per canonical index: the packed Tablebase entry, and plies to the end
+    private final byte[] entries;
+    private final byte[] distances;
+    private long solved;
+
+    // Board being searched and its base-3 index under every symmetry
+    private long x;
+    private long o;
+    private final int[] indexes = new int[Symmetry.COUNT];
+
+    public TablebaseGenerator(int size) {
+        GameBoard board = new GameBoard(size);
+        this.size = size;
+        this.winCondition = board.getWinCondition();
+        this.full = board.getFullMask();
+        this.lines = WinLines.forBoard(size, winCondition);
+        this.perms = Symmetry.permutations(size);
+        this.powers = Tablebase.powersOfThree(size * size + 1);
+        this.entries = new byte[powers[size * size]];
+        this.distances = new byte[powers[size * size]];
+
+        int[] ranks = MoveOrderer.centerRanks(size);
+        Integer[] cells = new Integer[size * size];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = i;
+        }
+        java.util.Arrays.sort(cells, (a, b) -> ranks[b] - ranks[a]);
+        order = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            order[i] = cells[i];
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : Tablebase.DEFAULT_DIRECTORY);
+        int[] sizes = Tablebase.SIZES;
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        Files.createDirectories(directory);
+        for (int size : sizes) {
+            long start = System.nanoTime();
+            TablebaseGenerator generator = new TablebaseGenerator(size);
+            int value = generator.generate();
+            Path file = directory.resolve(Tablebase.fileName(size));
+            generator.write(file);
+            System.out.printf("%dx%d: %s for X, %d positions solved in %d ms -> %s%n",
+                    size, size, value == Tablebase.WIN ? "win" : value == Tablebase.LOSS ? "loss" : "draw",
+                    generator.solved, (System.nanoTime() - start) / 1_000_000, file);
+        }
+    }
+
+    /**
+     * Solves the empty board and everything below it. Returns its value for X.
+     */
+    public int generate() {
+        x = 0;
+        o = 0;
+        java.util.Arrays.fill(indexes, 0);
+        return solve(true) & 3;
+    }
+
+    public void write(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(Tablebase.HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+            header.putInt(Tablebase.MAGIC).putInt(size).putInt(winCondition).putInt((int) solved);
+            header.flip();
+            channel.write(header);
+
+            // Keys in index order come out sorted
+            ByteBuffer keys = ByteBuffer.allocate(4 * (int) solved).order(ByteOrder.BIG_ENDIAN);
+            ByteBuffer values = ByteBuffer.allocate((int) solved);
+            for (int index = 0; index < entries.length; index++) {
+                if (entries[index] != 0) {
+                    keys.putInt(index);
+                    values.put(entries[index]);
+                }
+            }
+            keys.flip();
+            values.flip();
+            while (keys.hasRemaining()) {
+                channel.write(keys);
+            }
+            while (values.hasRemaining()) {
+                channel.write(values);
+            }
+        }
+    }
+
+    // Returns the packed entry of the current (non-terminal) position
+    private int solve(boolean xToMove) {
+        int canonical = Integer.MAX_VALUE;
+        int transform = 0;
+        for (int t = 0; t < Symmetry.COUNT; t++) {
+            if (indexes[t] < canonical) {
+                canonical = indexes[t];
+                transform = t;
+            }
+        }
+        if (entries[canonical] != 0) return entries[canonical];
+
+        long empty = ~(x | o) & full;
+        int bestValue = 0;
+        int bestDistance = 0;
+        int bestCell = 0;
+        for (int cell : order) {
+            long bit = 1L << cell;
+            if ((empty & bit) == 0) continue;
+
+            int value;
+            int distance;
+            play(cell, xToMove ? 1 : 2);
+            long mine = xToMove ? x : o;
+            if (completesLine(mine, cell)) {
+                value = Tablebase.WIN;
+                distance = 1;
+            } else if ((x | o) == full) {
+                value = Tablebase.DRAW;
+                distance = 1;
+            } else {
+                int child = solve(!xToMove);
+                value = Tablebase.WIN + Tablebase.LOSS - (child & 3);
+                distance = distances[childIndex()] + 1;
+            }
+            play(cell, xToMove ? -1 : -2);
+
+            if (bestValue == 0 || better(value, distance, bestValue, bestDistance)) {
+                bestValue = value;
+                bestDistance = distance;
+                bestCell = cell;
+            }
+        }
+
+        // The move is stored as seen through the canonical symmetry
+        int entry = bestValue | (perms[transform][bestCell] << 2);
+        entries[canonical] = (byte) entry;
+        distances[canonical] = (byte) bestDistance;
+        solved++;
+        return entry;
+    }
+
+    private static boolean better(int value, int distance, int bestValue, int bestDistance) {
+        if (value != bestValue) return value > bestValue;
+        // Win fast, lose slowly
+        return value == Tablebase.WIN ? distance < bestDistance : value == Tablebase.LOSS && distance > bestDistance;
+    }
+
+    private void play(int cell, int digit) {
+        long bit = 1L << cell;
+        if (digit == 1 || digit == -1) {
+            x ^= bit;
+        } else {
+            o ^= bit;
+        }
+        for (int t = 0; t < Symmetry.COUNT; t++) {
+            indexes[t] += digit * powers[perms[t][cell]];
+        }
+    }
+
+    private int childIndex() {
+        int canonical = Integer.MAX_VALUE;
+        for (int index : indexes) {
+            canonical = Math.min(canonical, index);
+        }
+        return canonical;
+    }
+
+    private boolean completesLine(long bits, int cell) {
+        for (int line : lines.getLinesThrough(cell)) {
+            long mask = lines.getMask(line);
+            if ((bits & mask) == mask) return true;
+        }
+        return false;
+    }
+}
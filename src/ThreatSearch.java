@@ -0,0 +1,197 @@
+/**
+ * ThreatSearch - Threat-space search for forced wins on the larger boards
+ * Only follows forcing moves, so it looks much deeper than the main search:
+ * VCF (victory by continuous fours) plays moves that threaten to win on the
+ * next move, each answered by its single forced block; VCT also allows
+ * moves that open two windows one short of a four, against every defence
+ * inside the attacker's windows and every counter-four.
+ * A "four" here is a win line holding winCondition - 1 own symbols and one
+ * empty cell. VCF results are exact; VCT treats defender moves outside the
+ * threatened windows as irrelevant.
+ */
+public class ThreatSearch {
+    private static final int DEFAULT_NODE_LIMIT = 200_000;
+    private static final int VCF_PLIES = 24;
+    private static final int VCT_PLIES = 2;
+    // Candidate blocks tried when the opponent threatens a forced win
+    private static final int DEFENCE_CANDIDATES = 16;
+
+    private final int nodeLimit;
+    private WinLines lines;
+    private int winCondition;
+    private long full;
+    private long nodes;
+
+    public ThreatSearch() {
+        this(DEFAULT_NODE_LIMIT);
+    }
+
+    public ThreatSearch(int nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * First move of a forced win for the side to move, or NO_MOVE. Tries
+     * VCF first, then VCT.
+     */
+    public int findWin(GameBoard board, char side) {
+        prepare(board);
+        long mine = board.getBits(side);
+        long theirs = board.getBits(side == 'X' ? 'O' : 'X');
+        int move = vcf(mine, theirs, VCF_PLIES);
+        if (move == SearchEngine.NO_MOVE && nodes < nodeLimit) {
+            move = vct(mine, theirs, VCT_PLIES);
+        }
+        return nodes < nodeLimit ? move : SearchEngine.NO_MOVE;
+    }
+
+    /**
+     * If the opponent would have a forced win by continuous fours were it to
+     * move now, a move for the side to move that takes it away; NO_MOVE if
+     * there is no such threat or no single move stops it.
+     */
+    public int findDefence(GameBoard board, char side) {
+        prepare(board);
+        long mine = board.getBits(side);
+        long theirs = board.getBits(side == 'X' ? 'O' : 'X');
+        int attack = vcf(theirs, mine, VCF_PLIES);
+        if (attack == SearchEngine.NO_MOVE || nodes >= nodeLimit) return SearchEngine.NO_MOVE;
+
+        // Their first attacking move, then the cells of the windows they can turn into fours
+        long candidates = 1L << attack;
+        long empty = ~(mine | theirs) & full;
+        for (int line = 0; line < lines.getLineCount(); line++) {
+            long mask = lines.getMask(line);
+            if ((mine & mask) == 0 && Long.bitCount(theirs & mask) >= winCondition - 2) {
+                candidates |= mask & empty;
+            }
+        }
+        int tried = 0;
+        for (long bits = candidates; bits != 0 && tried < DEFENCE_CANDIDATES; bits &= bits - 1) {
+            int cell = Long.numberOfTrailingZeros(bits);
+            tried++;
+            long blocked = mine | (1L << cell);
+            if (winningCells(theirs, blocked) != 0) continue;
+            if (vct(theirs, blocked, VCT_PLIES) == SearchEngine.NO_MOVE && nodes < nodeLimit) {
+                return cell;
+            }
+        }
+        return SearchEngine.NO_MOVE;
+    }
+
+    private void prepare(GameBoard board) {
+        winCondition = board.getWinCondition();
+        lines = WinLines.forBoard(board.getSize(), winCondition);
+        full = board.getFullMask();
+        nodes = 0;
+    }
+
+    // Attacker to move; returns the winning move or NO_MOVE
+    private int vcf(long mine, long theirs, int plies) {
+        if (++nodes >= nodeLimit) return SearchEngine.NO_MOVE;
+        long wins = winningCells(mine, theirs);
+        if (wins != 0) return Long.numberOfTrailingZeros(wins);
+        if (plies <= 0) return SearchEngine.NO_MOVE;
+
+        // A threat of the defender must be blocked, and only a block that is also a four keeps the initiative
+        long defenderWins = winningCells(theirs, mine);
+        if (Long.bitCount(defenderWins) > 1) return SearchEngine.NO_MOVE;
+        long candidates = fourMoves(mine, theirs);
+        if (defenderWins != 0) candidates &= defenderWins;
+
+        for (long bits = candidates; bits != 0; bits &= bits - 1) {
+            int cell = Long.numberOfTrailingZeros(bits);
+            long attacked = mine | (1L << cell);
+            if (winningCells(theirs, attacked) != 0) continue;
+            long threats = winningCells(attacked, theirs);
+            if (Long.bitCount(threats) > 1) return cell;
+            long blocked = theirs | threats;
+            if (vcf(attacked, blocked, plies - 2) != SearchEngine.NO_MOVE) return cell;
+            if (nodes >= nodeLimit) break;
+        }
+        return SearchEngine.NO_MOVE;
+    }
+
+    private int vct(long mine, long theirs, int plies) {
+        if (++nodes >= nodeLimit) return SearchEngine.NO_MOVE;
+        int win = vcf(mine, theirs, VCF_PLIES);
+        if (win != SearchEngine.NO_MOVE || plies <= 0) return win;
+        if (winningCells(theirs, mine) != 0) return SearchEngine.NO_MOVE;
+
+        long empty = ~(mine | theirs) & full;
+        for (long bits = threeMoves(mine, theirs); bits != 0; bits &= bits - 1) {
+            int cell = Long.numberOfTrailingZeros(bits);
+            long attacked = mine | (1L << cell);
+            if (defended(attacked, theirs, empty & ~(1L << cell), plies - 1)) continue;
+            return cell;
+        }
+        return SearchEngine.NO_MOVE;
+    }
+
+    // Defender to move after a VCT threat: true if some reply holds
+    private boolean defended(long mine, long theirs, long empty, int plies) {
+        if (nodes >= nodeLimit) return true;
+        long replies = fourMoves(theirs, mine);
+        for (int line = 0; line < lines.getLineCount(); line++) {
+            long mask = lines.getMask(line);
+            if ((theirs & mask) == 0 && (mine & mask) != 0) {
+                replies |= mask & empty;
+            }
+        }
+        for (long bits = replies; bits != 0; bits &= bits - 1) {
+            int cell = Long.numberOfTrailingZeros(bits);
+            if (vct(mine, theirs | (1L << cell), plies - 1) == SearchEngine.NO_MOVE) return true;
+        }
+        return false;
+    }
+
+    // Empty cells that would complete a line for bits
+    private long winningCells(long bits, long blockers) {
+        long empty = ~(bits | blockers) & full;
+        long cells = 0;
+        for (int line = 0; line < lines.getLineCount(); line++) {
+            long mask = lines.getMask(line);
+            if ((blockers & mask) == 0 && Long.bitCount(bits & mask) == winCondition - 1) {
+                cells |= mask & empty;
+            }
+        }
+        return cells;
+    }
+
+    // Empty cells that would make a four for bits
+    private long fourMoves(long bits, long blockers) {
+        return windowCells(bits, blockers, winCondition - 2);
+    }
+
+    // Empty cells that would open at least two windows one short of a four
+    private long threeMoves(long bits, long blockers) {
+        long empty = ~(bits | blockers) & full;
+        long once = 0;
+        long twice = 0;
+        for (int line = 0; line < lines.getLineCount(); line++) {
+            long mask = lines.getMask(line);
+            if ((blockers & mask) == 0 && Long.bitCount(bits & mask) == winCondition - 3) {
+                long cells = mask & empty;
+                twice |= once & cells;
+                once |= cells;
+            }
+        }
+        return twice;
+    }
+
+    private long windowCells(long bits, long blockers, int count) {
+        long empty = ~(bits | blockers) & full;
+        long cells = 0;
+        for (int line = 0; line < lines.getLineCount(); line++) {
+            long mask = lines.getMask(line);
+            if ((blockers & mask) == 0 && Long.bitCount(bits & mask) == count) {
+                cells |= mask & empty;
+            }
+        }
+        return cells;
+    }
+}
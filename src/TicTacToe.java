@@ -5,6 +5,8 @@
  */
 public class TicTacToe {
     public static void main(String[] args) {
+        // Perfect-play tables for 3x3 and 4x4, if TablebaseGenerator has been run
+        Tablebase.loadDefault();
         javax.swing.SwingUtilities.invokeLater(() -> {
             new GameFrame();
         });
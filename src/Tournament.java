@@ -0,0 +1,289 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tournament - Round robin between AI difficulties, many games at once
+ * Every pair of difficulties plays the given number of games on every board
+ * size and mode, with colours alternating. Each game gets fresh AIPlayers
+ * seeded from the tournament seed and searches by node and playout budgets
+ * instead of the clock, so the results are the same on every run with the
+ * same seed, whatever the number of threads. Only the latencies vary.
+ *
+ * Reports per size and mode the win/draw/loss record and an Elo rating of
+ * every difficulty, and per-move latency percentiles.
+ *
+ * Usage: java Tournament [--seed n] [--games n] [--threads n] [--sizes 3,5,7]
+ *        [--modes classic,upnormal] [--players easy,medium,hard]
+ *        [--nodes n] [--playouts n]
+ * --games is per pair of players, --nodes the HARD search nodes per move,
+ * --playouts the MCTS playouts per move (used on 7x7).
+ */
+public class Tournament {
+    private static final double BASE_RATING = 1500;
+
+    private long seed = 1;
+    private int gamesPerPair = 20;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int[] sizes = {3, 5, 7};
+    private boolean[] modes = {true, false};
+    private AIPlayer.Difficulty[] players = AIPlayer.Difficulty.values();
+    private long nodeBudget = 20_000;
+    private int playoutBudget = 2_000;
+
+    // One scheduled game: players a and b of a group, a plays X when aFirst
+    private static class Game {
+        final int group;
+        final int a;
+        final int b;
+        final boolean aFirst;
+        final long seed;
+        // Filled in when played: a's score (1, 0.5 or 0) and move times in ns
+        double scoreA;
+        long[] latenciesA;
+        long[] latenciesB;
+
+        Game(int group, int a, int b, boolean aFirst, long seed) {
+            this.group = group;
+            this.a = a;
+            this.b = b;
+            this.aFirst = aFirst;
+            this.seed = seed;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        Tournament tournament = new Tournament();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            tournament.set(args[i], args[i + 1]);
+        }
+        Tablebase.loadDefault();
+        tournament.run();
+    }
+
+    private void set(String option, String value) {
+        switch (option) {
+            case "--seed":
+                seed = Long.parseLong(value);
+                break;
+            case "--games":
+                gamesPerPair = Integer.parseInt(value);
+                break;
+            case "--threads":
+                threads = Integer.parseInt(value);
+                break;
+            case "--sizes":
+                sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                break;
+            case "--modes":
+                String[] names = value.split(",");
+                modes = new boolean[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    modes[i] = !names[i].equalsIgnoreCase("upnormal");
+                }
+                break;
+            case "--players":
+                players = Arrays.stream(value.split(","))
+                        .map(name -> AIPlayer.Difficulty.valueOf(name.toUpperCase()))
+                        .toArray(AIPlayer.Difficulty[]::new);
+                break;
+            case "--nodes":
+                nodeBudget = Long.parseLong(value);
+                break;
+            case "--playouts":
+                playoutBudget = Integer.parseInt(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + option);
+        }
+    }
+
+    private void run() throws InterruptedException, ExecutionException {
+        // Seeds are drawn in schedule order, so a game's seed does not depend on the threads
+        SplittableRandom seeds = new SplittableRandom(seed);
+        List<Game> games = new ArrayList<>();
+        int groups = sizes.length * modes.length;
+        for (int group = 0; group < groups; group++) {
+            for (int a = 0; a < players.length; a++) {
+                for (int b = a + 1; b < players.length; b++) {
+                    for (int g = 0; g < gamesPerPair; g++) {
+                        games.add(new Game(group, a, b, g % 2 == 0, seeds.nextLong()));
+                    }
+                }
+            }
+        }
+
+        System.out.printf("%d games, seed %d, %d threads, HARD %d nodes, MCTS %d playouts%n",
+                games.size(), seed, threads, nodeBudget, playoutBudget);
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> pending = new ArrayList<>();
+            for (Game game : games) {
+                pending.add(pool.submit(() -> play(game)));
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (int group = 0; group < groups; group++) {
+            report(group, games);
+        }
+        System.out.printf("%n%.2f s, %.1f games/s%n", seconds, games.size() / seconds);
+    }
+
+    private void play(Game game) {
+        int size = sizes[game.group / modes.length];
+        boolean classic = modes[game.group % modes.length];
+        SplittableRandom random = new SplittableRandom(game.seed);
+        int x = game.aFirst ? game.a : game.b;
+        int o = game.aFirst ? game.b : game.a;
+        AIPlayer playerX = createPlayer(players[x], 'X', random.nextLong());
+        AIPlayer playerO = createPlayer(players[o], 'O', random.nextLong());
+        playerX.setOpponent(playerO);
+        playerO.setOpponent(playerX);
+
+        GameSession session = new GameSession(size, playerX, playerO, classic);
+        long[] timesX = new long[size * size];
+        long[] timesO = new long[size * size];
+        int movesX = 0;
+        int movesO = 0;
+        while (!session.isOver()) {
+            boolean xToMove = session.getCurrentPlayer() == playerX;
+            long start = System.nanoTime();
+            if (!session.playTurn()) {
+                throw new IllegalStateException(session.getCurrentPlayer().getName()
+                        + " did not play a legal move");
+            }
+            long elapsed = System.nanoTime() - start;
+            // Bombs empty cells again, so a game can run longer than the board
+            if (xToMove) {
+                if (movesX == timesX.length) timesX = Arrays.copyOf(timesX, movesX * 2);
+                timesX[movesX++] = elapsed;
+            } else {
+                if (movesO == timesO.length) timesO = Arrays.copyOf(timesO, movesO * 2);
+                timesO[movesO++] = elapsed;
+            }
+        }
+
+        double scoreX = session.getOutcome() == GameSession.Outcome.DRAW ? 0.5
+                : session.getWinner() == playerX ? 1 : 0;
+        game.scoreA = game.aFirst ? scoreX : 1 - scoreX;
+        game.latenciesA = Arrays.copyOf(game.aFirst ? timesX : timesO, game.aFirst ? movesX : movesO);
+        game.latenciesB = Arrays.copyOf(game.aFirst ? timesO : timesX, game.aFirst ? movesO : movesX);
+    }
+
+    private AIPlayer createPlayer(AIPlayer.Difficulty difficulty, char symbol, long seed) {
+        AIPlayer ai = new AIPlayer(difficulty.name(), symbol, symbol == 'X' ? 'O' : 'X', difficulty, seed);
+        ai.setTimeBudget(0);
+        ai.setNodeBudget(nodeBudget);
+        ai.setPlayoutBudget(playoutBudget);
+        ai.setSearchThreads(1);
+        ai.setPondering(false);
+        return ai;
+    }
+
+    private void report(int group, List<Game> games) {
+        int n = players.length;
+        int[][] wins = new int[n][n];
+        int[][] draws = new int[n][n];
+        List<List<Long>> latencies = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            latencies.add(new ArrayList<>());
+        }
+        for (Game game : games) {
+            if (game.group != group) continue;
+            if (game.scoreA == 1) {
+                wins[game.a][game.b]++;
+            } else if (game.scoreA == 0) {
+                wins[game.b][game.a]++;
+            } else {
+                draws[game.a][game.b]++;
+                draws[game.b][game.a]++;
+            }
+            for (long t : game.latenciesA) latencies.get(game.a).add(t);
+            for (long t : game.latenciesB) latencies.get(game.b).add(t);
+        }
+
+        int size = sizes[group / modes.length];
+        System.out.printf("%n%dx%d %s%n", size, size, modes[group % modes.length] ? "Classic" : "Upnormal");
+        double[] elo = ratings(wins, draws);
+        System.out.printf("  %-7s %5s %5s %5s %6s   %8s %8s %8s %8s%n",
+                "player", "W", "D", "L", "Elo", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (int i = 0; i < n; i++) {
+            int w = 0;
+            int d = 0;
+            int l = 0;
+            for (int j = 0; j < n; j++) {
+                w += wins[i][j];
+                d += draws[i][j];
+                l += wins[j][i];
+            }
+            long[] times = latencies.get(i).stream().mapToLong(Long::longValue).sorted().toArray();
+            System.out.printf("  %-7s %5d %5d %5d %6.0f   %8.3f %8.3f %8.3f %8.3f%n",
+                    players[i], w, d, l, elo[i], percentile(times, 50), percentile(times, 90),
+                    percentile(times, 99), percentile(times, 100));
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                System.out.printf("  %s vs %s: +%d =%d -%d%n",
+                        players[i], players[j], wins[i][j], draws[i][j], wins[j][i]);
+            }
+        }
+    }
+
+    /**
+     * Maximum likelihood Elo ratings (Bradley-Terry, a draw counting as half
+     * a win each), averaging BASE_RATING. One virtual draw between every pair
+     * keeps the ratings finite when a player wins or loses every game.
+     */
+    private static double[] ratings(int[][] wins, int[][] draws) {
+        int n = wins.length;
+        double[] strength = new double[n];
+        Arrays.fill(strength, 1);
+        for (int iteration = 0; iteration < 10_000; iteration++) {
+            double change = 0;
+            for (int i = 0; i < n; i++) {
+                double score = 0;
+                double denominator = 0;
+                for (int j = 0; j < n; j++) {
+                    if (j == i) continue;
+                    double played = wins[i][j] + wins[j][i] + draws[i][j] + 1;
+                    score += wins[i][j] + (draws[i][j] + 1) / 2.0;
+                    denominator += played / (strength[i] + strength[j]);
+                }
+                double updated = denominator > 0 ? score / denominator : 1;
+                change = Math.max(change, Math.abs(Math.log(updated / strength[i])));
+                strength[i] = updated;
+            }
+            if (change < 1e-9) break;
+        }
+
+        double[] elo = new double[n];
+        double mean = 0;
+        for (int i = 0; i < n; i++) {
+            elo[i] = 400 * Math.log10(strength[i]);
+            mean += elo[i] / n;
+        }
+        for (int i = 0; i < n; i++) {
+            elo[i] += BASE_RATING - mean;
+        }
+        return elo;
+    }
+
+    // Nearest-rank percentile of sorted nanosecond times, in milliseconds
+    private static double percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * TranspositionTable - Fixed-size hash table of searched positions
+ * Entries live in two parallel long arrays (key and packed data), grouped in
+ * buckets of two slots: the first keeps the deepest result, the second
+ * always takes the newest one.
+ */
+public class TranspositionTable {
+    public static final int EXACT = 0;
+    public static final int LOWER = 1;
+    public static final int UPPER = 2;
+
+    public static final int NO_MOVE = -1;
+    // Largest draft the 6-bit depth field holds
+    public static final int MAX_DEPTH = 0x3F;
+    // Set when the search below the entry stopped at the depth limit somewhere
+    private static final long HORIZON = 1L << 26;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int bucketMask;
+    private int generation;
+
+    public TranspositionTable(int sizeBits) {
+        int slots = 1 << sizeBits;
+        keys = new long[slots];
+        data = new long[slots];
+        bucketMask = (slots >> 1) - 1;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(keys, 0);
+        java.util.Arrays.fill(data, 0);
+        generation = 0;
+    }
+
+    // Called once per search so entries from older turns lose their priority
+    public void nextGeneration() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Returns the packed entry for the key, or 0 if there is none. Use the
+     * static accessors below to read the fields.
+     */
+    public long probe(long key) {
+        int slot = ((int) key & bucketMask) << 1;
+        long entry = data[slot];
+        if (entry != 0 && (keys[slot] ^ entry) == key) return entry;
+        entry = data[slot + 1];
+        if (entry != 0 && (keys[slot + 1] ^ entry) == key) return entry;
+        return 0;
+    }
+
+    /**
+     * Keys are stored XOR-ed with their data, so a slot torn by two search
+     * threads writing at once fails the check in probe instead of returning
+     * another position's entry.
+     */
+    public void store(long key, int score, int depth, int flag, int bestMove, boolean horizon) {
+        long entry = pack(score, depth, flag, bestMove, generation) | (horizon ? HORIZON : 0);
+        int slot = ((int) key & bucketMask) << 1;
+
+        // Depth-preferred slot: same position, stale generation or deeper result
+        long old = data[slot];
+        long oldKey = keys[slot] ^ old;
+        if (old == 0 || oldKey == key || generationOf(old) != generation || depth >= depthOf(old)) {
+            if (old != 0 && oldKey != key && generationOf(old) == generation) {
+                keys[slot + 1] = oldKey ^ old;
+                data[slot + 1] = old;
+            }
+            keys[slot] = key ^ entry;
+            data[slot] = entry;
+            return;
+        }
+
+        // Always-replace slot
+        keys[slot + 1] = key ^ entry;
+        data[slot + 1] = entry;
+    }
+
+    private static long pack(int score, int depth, int flag, int bestMove, int generation) {
+        // Bit 63 marks the slot as used so an all-zero entry is never valid
+        return (1L << 63)
+                | ((long) (score & 0xFFFFFF) << 32)
+                | ((long) (bestMove + 1) & 0x3FF) << 16
+                | ((long) (depth & MAX_DEPTH) << 10)
+                | ((long) flag << 8)
+                | generation;
+    }
+
+    public static int scoreOf(long entry) {
+        return ((int) (entry >>> 32) << 8) >> 8;
+    }
+
+    public static int bestMoveOf(long entry) {
+        return (int) ((entry >>> 16) & 0x3FF) - 1;
+    }
+
+    public static int depthOf(long entry) {
+        return (int) ((entry >>> 10) & MAX_DEPTH);
+    }
+
+    public static int flagOf(long entry) {
+        return (int) ((entry >>> 8) & 0x3);
+    }
+
+    public static boolean horizonOf(long entry) {
+        return (entry & HORIZON) != 0;
+    }
+
+    private static int generationOf(long entry) {
+        return (int) (entry & 0xFF);
+    }
+}
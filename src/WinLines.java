@@ -0,0 +1,129 @@
+/**
+ * WinLines - Precomputed winning lines for one (size, winCondition) pair
+ * Every window of winCondition cells in a row, column or diagonal is stored
+ * as a bit mask, together with the list of lines that pass through each cell
+ * and the cell's base-3 place value in each of them (see PatternTable)
+ */
+public class WinLines {
+    private static final WinLines[][] CACHE = new WinLines[9][9];
+
+    private final int size;
+    private final int winCondition;
+    private final long[] masks;
+    private final int[][] lineCells;
+    private final int[][] linesThrough;
+    private final int[][] placeValues;
+    private final GameBoard.WinResult[] xResults;
+    private final GameBoard.WinResult[] oResults;
+
+    public static synchronized WinLines forBoard(int size, int winCondition) {
+        WinLines lines = CACHE[size][winCondition];
+        if (lines == null) {
+            lines = new WinLines(size, winCondition);
+            CACHE[size][winCondition] = lines;
+        }
+        return lines;
+    }
+
+    private WinLines(int size, int winCondition) {
+        this.size = size;
+        this.winCondition = winCondition;
+
+        int span = size - winCondition + 1;
+        int count = 2 * size * span + 2 * span * span;
+        masks = new long[count];
+        lineCells = new int[count][];
+
+        // Same order as the original scan: rows, columns, both diagonals
+        int line = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < span; j++) {
+                addLine(line++, i, j, 0, 1);
+            }
+        }
+        for (int i = 0; i < span; i++) {
+            for (int j = 0; j < size; j++) {
+                addLine(line++, i, j, 1, 0);
+            }
+        }
+        for (int i = 0; i < span; i++) {
+            for (int j = 0; j < span; j++) {
+                addLine(line++, i, j, 1, 1);
+            }
+        }
+        for (int i = 0; i < span; i++) {
+            for (int j = winCondition - 1; j < size; j++) {
+                addLine(line++, i, j, 1, -1);
+            }
+        }
+
+        int[] through = new int[size * size];
+        for (int[] cells : lineCells) {
+            for (int cell : cells) {
+                through[cell]++;
+            }
+        }
+        linesThrough = new int[size * size][];
+        placeValues = new int[size * size][];
+        for (int cell = 0; cell < size * size; cell++) {
+            linesThrough[cell] = new int[through[cell]];
+            placeValues[cell] = new int[through[cell]];
+            through[cell] = 0;
+        }
+        for (int l = 0; l < count; l++) {
+            int value = 1;
+            for (int cell : lineCells[l]) {
+                placeValues[cell][through[cell]] = value;
+                linesThrough[cell][through[cell]++] = l;
+                value *= 3;
+            }
+        }
+
+        xResults = new GameBoard.WinResult[count];
+        oResults = new GameBoard.WinResult[count];
+        for (int l = 0; l < count; l++) {
+            int[][] cells = new int[winCondition][];
+            for (int k = 0; k < winCondition; k++) {
+                cells[k] = new int[]{lineCells[l][k] / size, lineCells[l][k] % size};
+            }
+            xResults[l] = new GameBoard.WinResult('X', cells);
+            oResults[l] = new GameBoard.WinResult('O', cells);
+        }
+    }
+
+    private void addLine(int line, int row, int col, int dRow, int dCol) {
+        int[] cells = new int[winCondition];
+        long mask = 0;
+        for (int k = 0; k < winCondition; k++) {
+            cells[k] = (row + k * dRow) * size + (col + k * dCol);
+            mask |= 1L << cells[k];
+        }
+        masks[line] = mask;
+        lineCells[line] = cells;
+    }
+
+    public int getLineCount() {
+        return masks.length;
+    }
+
+    public long getMask(int line) {
+        return masks[line];
+    }
+
+    public int[] getCells(int line) {
+        return lineCells[line];
+    }
+
+    public int[] getLinesThrough(int cell) {
+        return linesThrough[cell];
+    }
+
+    // Parallel to getLinesThrough: 3^k where the cell is the k-th of the line
+    public int[] getPlaceValues(int cell) {
+        return placeValues[cell];
+    }
+
+    public GameBoard.WinResult getResult(int line, char symbol) {
+        return symbol == 'X' ? xResults[line] : oResults[line];
+    }
+}